@@ -1,7 +1,17 @@
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //The code closely follows the algorithm in the Russel and Norvig, fig. 18.24
 public class FeedForwardNetwork {
@@ -10,7 +20,7 @@ public class FeedForwardNetwork {
 	private int hiddenLayerSize = 0;
 	private int numHiddenLayers = 0;
 	private int outputLayerSize = 0;
-	private int maxLayerSize = 0;
+	private int[] layerSizes; // input, hidden layers, output
 	public double globalError = 0;
 	
 	public FeedForwardNetwork(int inputLayerSize, int hiddenLayerSize, int numHiddenLayers, int outputLayerSize){
@@ -38,18 +48,47 @@ public class FeedForwardNetwork {
 		}
 		this.outputLayerSize = outputLayerSize;
 		
-		this.maxLayerSize = Math.max(Math.max(inputLayerSize, hiddenLayerSize), outputLayerSize);
+		this.layerSizes = new int[numHiddenLayers + 2];
+		this.layerSizes[0] = inputLayerSize;
+		for (int l = 1; l <= numHiddenLayers; l++) {
+			this.layerSizes[l] = hiddenLayerSize;
+		}
+		this.layerSizes[numHiddenLayers + 1] = outputLayerSize;
 	}
 
 	private int trainingSetSize = 0;
 	private double learningRate = 0;	
 	private double inputs[][];
 	private double desiredOutput[][];
-	private double[][][] weights; // [layer][from][to]
+	// weights[l] holds the weights from layer l to layer l+1, exactly
+	// layerSizes[l] x layerSizes[l+1] of them, row-major:
+	// weights[l][i * layerSizes[l+1] + j] is the weight from node i to node j.
+	private double[][] weights;
+	// We store the activation of each node (over all input and hidden layers) because we need that data during back propagation.
+	// Please notice that in order to simplify the code, we store the activation of the input layer too.
+	// activation[l] holds layer l and error[l] layer l+1; both are allocated once
+	// and reused for every example, so training and testing allocate nothing.
+	private double[][] activation;
+	private double[][] error;
+	// The inner loops: the Vector API ones if they can be loaded, otherwise plain loops.
+	private NetworkKernels kernels = NetworkKernels.best();
 
 	
-	@SuppressWarnings("hiding")
 	public void initNetwork(double[][] inputs, double[][] desiredOutput, double learningRate, double initialWeightOffset) {
+		initNetwork(inputs, desiredOutput, learningRate, initialWeightOffset, null);
+	}
+
+	/***
+	 * Like initNetwork(inputs, desiredOutput, learningRate, initialWeightOffset),
+	 * but draws the initial weights from a generator with the given seed, so
+	 * the same seed always gives the same network.
+	 */
+	public void initNetwork(double[][] inputs, double[][] desiredOutput, double learningRate, double initialWeightOffset, long seed) {
+		initNetwork(inputs, desiredOutput, learningRate, initialWeightOffset, new Random(seed));
+	}
+
+	@SuppressWarnings("hiding")
+	private void initNetwork(double[][] inputs, double[][] desiredOutput, double learningRate, double initialWeightOffset, Random random) {
 		this.trainingSetSize = inputs.length;
 		if (this.trainingSetSize == 0) {
 			System.out.println("No training data.");
@@ -63,68 +102,97 @@ public class FeedForwardNetwork {
 		this.desiredOutput = desiredOutput;
 		this.learningRate = learningRate;
 		
-		// To simplify the code, we generate a slightly oversized weight matrix. 
-		// Not to worry though, we will only use what we need.
-		this.weights = new double[this.numHiddenLayers+1][this.maxLayerSize][this.maxLayerSize]; 
+		this.weights = new double[this.numHiddenLayers+1][];
+		this.activation = new double[this.numHiddenLayers+2][];
+		this.error = new double[this.numHiddenLayers+1][];
+		for (int l = 0; l < this.numHiddenLayers+1; l++) {
+			this.weights[l] = new double[this.layerSizes[l] * this.layerSizes[l+1]];
+			this.activation[l+1] = new double[this.layerSizes[l+1]];
+			this.error[l] = new double[this.layerSizes[l+1]];
+		}
 
+		// Draws a random weight for every pair of nodes (i, j) below the hidden
+		// layer size, in the same order as the square matrices this used to
+		// have, and keeps the ones that exist; other weights start at 0.
 		for (int l = 0; l < this.numHiddenLayers+1; l++) {
+			int fromLayerSize = this.layerSizes[l];
+			int toLayerSize = this.layerSizes[l+1];
 			for (int i = 0; i < this.hiddenLayerSize; i++){
 				for (int j = 0; j < this.hiddenLayerSize; j++){
-					this.weights[l][i][j] = Math.random() - initialWeightOffset; 	
+					double weight = (random == null ? Math.random() : random.nextDouble()) - initialWeightOffset;
+					if (i < fromLayerSize && j < toLayerSize) {
+						this.weights[l][i * toLayerSize + j] = weight;
+					}
 				}
 			}
 		}
 	}
 
-	private static double sigmoidActivationFunction(double input){
-		return 1.0 / (1 + Math.exp(-1.0 * input));
+	/* Traditional Getters and Setters */
+	public NetworkKernels getKernels() { return this.kernels; }
+	public void setKernels(NetworkKernels kernels) { this.kernels = kernels; }
+
+	/* Bytes taken by the weights. */
+	public long getMemoryBytes() {
+		long count = 0;
+		for (double[] layer : this.weights) {
+			count += layer.length;
+		}
+		return count * 8;
 	}
-	
+
 	private static double sigmoidDerivative(double value){
 		return value * (1 - value);
 	}
 	
 	private void feedForward (double[][] activation, int fromLayerSize, int toLayerSize, int l){
-		double inJ;
+		// Sums the inputs of all nodes j at once, row by row of the weights,
+		// so they are read in memory order; each sum still adds up its terms
+		// in order of i.
+		double[] w = this.weights[l];
+		double[] from = activation[l];
+		double[] in = activation[l+1];
 		for (int j = 0; j < toLayerSize; j++){
-			inJ = 0;
-			for (int i = 0; i < fromLayerSize; i++){
-				inJ += this.weights[l][i][j] * activation[l][i];
-			}
-			// 0 is the first hidden layer
-			activation[l+1][j] = sigmoidActivationFunction(inJ);
+			in[j] = 0;
 		}
+		for (int i = 0; i < fromLayerSize; i++){
+			this.kernels.axpy(from[i], w, i * toLayerSize, in, 0, toLayerSize);
+		}
+		// 0 is the first hidden layer
+		this.kernels.sigmoid(in, toLayerSize);
 	}
 	
+	/*
+	 * Computes the activation of every layer for one example. The input
+	 * layer's activation is the example itself, not a copy.
+	 */
+	private void forwardPass(double[] input){
+		this.activation[0] = input;
+		// There may be different sizes for the input, hidden and output layers, hence there are three different calls for feedForeard
+		// input to first hidden layer
+		feedForward(this.activation, this.inputLayerSize, this.hiddenLayerSize, 0);
+		// hidden to hidden layers
+		for (int l = 1; l < this.numHiddenLayers; l++){
+			feedForward(this.activation, this.hiddenLayerSize, this.hiddenLayerSize, l);					
+		}
+		// last hidden layer to output layer
+		feedForward(this.activation, this.hiddenLayerSize, this.outputLayerSize, this.numHiddenLayers);
+	}
+
 	public void trainNetwork(int iterations, boolean verbose){
+		double[][] activation = this.activation;
+		double[][] error = this.error;
 		for (int k = 0; k < iterations; k++){
 			globalError = 0.0;
+			long allocated = allocatedBytes();
 			//Run through entire training set once.
 			for (int example = 0; example < this.trainingSetSize; example++){
 			    // Used for progress bar. Uncomment if progress bar is desired. 
 				// long startTime = System.currentTimeMillis();
 				
-				// We store the activation of each node (over all input and hidden layers) because we need that data during back propagation.
-				// Please notice that in order to simplify the code, we store the activation of the input layer too.
-				double[][] activation = new double[this.numHiddenLayers+2][this.maxLayerSize];
-				// Reading in the activation from the training data example
-				for (int i = 0; i < this.inputLayerSize; i++){
-					activation[0][i] = this.inputs[example][i];
-				}
-
-				// There may be different sizes for the input, hidden and output layers, hence there are three different calls for feedForeard
-				// input to first hidden layer
-				feedForward(activation, this.inputLayerSize, this.hiddenLayerSize, 0);
-				// hidden to hidden layers
-				for (int l = 1; l < this.numHiddenLayers; l++){
-					feedForward(activation, this.hiddenLayerSize, this.hiddenLayerSize, l);					
-				}
-				// last hidden layer to output layer
-				feedForward(activation, this.hiddenLayerSize, this.outputLayerSize, this.numHiddenLayers);
+				forwardPass(this.inputs[example]);
 
-				
 				// calculating errors
-				double[][] error = new double[this.numHiddenLayers+1][this.maxLayerSize];
 				// Calculating errors at output layer
 				for (int j = 0; j < this.outputLayerSize; j++) {					
 					error[this.numHiddenLayers][j] = sigmoidDerivative(activation[this.numHiddenLayers+1][j]) * (this.desiredOutput[example][j] - activation[this.numHiddenLayers+1][j]);
@@ -135,7 +203,7 @@ public class FeedForwardNetwork {
 				
 				// Calculating error of remaining hidden layers. 
 				for (int l = this.numHiddenLayers - 2; l >= 0; l--){				
-					calculateError(error, activation, this.hiddenLayerSize, this.outputLayerSize, l);
+					calculateError(error, activation, this.hiddenLayerSize, this.hiddenLayerSize, l);
 				}				
 
 				/** Adjusting weights **/ 
@@ -153,31 +221,388 @@ public class FeedForwardNetwork {
 //					 printProgress(startTime, this.trainingSetSize, (example+1));
 //				}
 			}
+			allocated = allocatedBytes() - allocated;
+			if (verbose) {
+				printIteration(k, iterations, allocated);
+			}
+		}
+	}
+
+	private void printIteration(int k, int iterations, long allocated){
+		System.out.println("Completed iteration " + (k+1) +" out of "+ iterations + " " + round((((double)(k+1)/iterations)), 4) * 100 + "% Complete");
+		// The examples allocate nothing: this stays at the few hundred
+		// bytes that reading the counter takes, however large the training set.
+		System.out.println("Bytes allocated during iteration: " + (allocated < 0 ? "n/a" : Long.toString(allocated)));
+		// calculating RMS
+		System.out.println("Global error: " + Math.sqrt(globalError/(this.trainingSetSize*this.outputLayerSize)));
+	}
+
+	/***
+	 * Mini-batch gradient descent: the gradients of batchSize examples at a
+	 * time are summed and the weights updated once per batch, by learning
+	 * rate times the sum (so the weights move about as far per iteration as
+	 * with per-example updates). The forward and backward passes of a batch
+	 * are matrix-matrix products over all its examples at once. A batchSize
+	 * of 1 trains per example, as trainNetwork(iterations, verbose) does.
+	 *
+	 * @param iterations - passes over the training set.
+	 * @param batchSize - examples per weight update.
+	 * @param verbose - prints progress and the error after every iteration.
+	 */
+	public void trainNetwork(int iterations, int batchSize, boolean verbose){
+		if (batchSize <= 1) {
+			trainNetwork(iterations, verbose);
+			return;
+		}
+		MiniBatch batch = new MiniBatch(batchSize);
+		for (int k = 0; k < iterations; k++){
+			batch.squaredError = 0;
+			long allocated = allocatedBytes();
+			for (int first = 0; first < this.trainingSetSize; first += batchSize){
+				batch.accumulate(first, Math.min(batchSize, this.trainingSetSize - first));
+				applyGradient(batch.gradient);
+			}
+			allocated = allocatedBytes() - allocated;
+			globalError = batch.squaredError;
 			if (verbose) {
-				System.out.println("Completed iteration " + (k+1) +" out of "+ iterations + " " + round((((double)(k+1)/iterations)), 4) * 100 + "% Complete");
-				// calculating RMS
-				System.out.println("Global error: " + Math.sqrt(globalError/(this.trainingSetSize*this.outputLayerSize)));
+				printIteration(k, iterations, allocated);
+			}
+		}
+	}
+
+	/* Adds learning rate times gradient to the weights and clears gradient. */
+	private void applyGradient(double[][] gradient){
+		for (int l = 0; l < this.numHiddenLayers+1; l++){
+			double[] w = this.weights[l];
+			double[] g = gradient[l];
+			for (int i = 0; i < w.length; i++){
+				w[i] += this.learningRate * g[i];
+				g[i] = 0;
+			}
+		}
+	}
+
+	/***
+	 * Data-parallel mini-batch gradient descent: the examples of every batch
+	 * are split among threads, each summing the gradients of its share in
+	 * buffers of its own, and the buffers are then summed into the weights,
+	 * by all threads at once, each over a slice of the weights. The updates
+	 * are the same as trainNetwork(iterations, batchSize, verbose) makes, up
+	 * to rounding. A batchSize or threads of 1 trains on the calling thread.
+	 *
+	 * @param iterations - passes over the training set.
+	 * @param batchSize - examples per weight update.
+	 * @param threads - threads to train on; at most the number of cores.
+	 * @param deterministic - gives every thread a fixed shard of each batch and
+	 * sums the shards in order, so that training twice from the same weights,
+	 * with the same batch size and threads, gives the same weights to the
+	 * last bit. Otherwise the threads take the examples a few at a time as
+	 * they are free, which keeps them all busy when some are slowed down,
+	 * but the sums then depend on the timing.
+	 * @param verbose - prints progress and the error after every iteration.
+	 */
+	public void trainNetwork(int iterations, int batchSize, int threads, boolean deterministic, boolean verbose){
+		if (batchSize <= 1 || threads <= 1) {
+			trainNetwork(iterations, batchSize, verbose);
+			return;
+		}
+		DataParallel parallel = new DataParallel(batchSize, threads, deterministic);
+		try {
+			for (int k = 0; k < iterations; k++){
+				long allocated = allocatedBytes();
+				for (int first = 0; first < this.trainingSetSize; first += batchSize){
+					parallel.train(first, Math.min(batchSize, this.trainingSetSize - first));
+				}
+				allocated = allocatedBytes() - allocated;
+				globalError = parallel.takeSquaredError();
+				if (verbose) {
+					printIteration(k, iterations, allocated);
+				}
+			}
+		} finally {
+			parallel.shutdown();
+		}
+	}
+
+	/*
+	 * The threads of data-parallel training, each with a MiniBatch of its
+	 * own. A batch is trained in two steps, each of which waits for all
+	 * threads to finish: every thread sums the gradients of its examples,
+	 * reading the weights but not writing them, then every thread adds the
+	 * sums of all threads to its slice of the weights.
+	 */
+	private class DataParallel {
+		// Examples taken at a time when not deterministic; a multiple of
+		// the four rows multiplyAdd works on.
+		private static final int CHUNK = 8;
+
+		final ExecutorService pool;
+		final MiniBatch[] workers;
+		final boolean deterministic;
+		final int chunk;
+		final List<Callable<Void>> passes = new ArrayList<>();
+		final List<Callable<Void>> reductions = new ArrayList<>();
+		// Next chunk of the batch to take, when not deterministic.
+		final AtomicInteger next = new AtomicInteger();
+		// The batch being trained on.
+		int first;
+		int count;
+
+		DataParallel(int batchSize, int threads, boolean deterministic){
+			int shard = (batchSize + threads - 1) / threads;
+			this.pool = Executors.newFixedThreadPool(threads);
+			this.workers = new MiniBatch[threads];
+			this.deterministic = deterministic;
+			this.chunk = deterministic ? shard : Math.min(shard, CHUNK);
+			for (int t = 0; t < threads; t++){
+				int worker = t;
+				this.workers[t] = new MiniBatch(this.chunk);
+				this.passes.add(() -> { pass(worker); return null; });
+				this.reductions.add(() -> { reduce(worker); return null; });
+			}
+		}
+
+		void train(int first, int count){
+			this.first = first;
+			this.count = count;
+			this.next.set(0);
+			run(this.passes);
+			run(this.reductions);
+		}
+
+		/* Sums the gradients of the worker's share of the batch. */
+		private void pass(int worker){
+			MiniBatch batch = this.workers[worker];
+			if (this.deterministic) {
+				int start = worker * this.chunk;
+				if (start < this.count) {
+					batch.accumulate(this.first + start, Math.min(this.chunk, this.count - start));
+				}
+				return;
+			}
+			int start;
+			while ((start = this.next.getAndIncrement() * this.chunk) < this.count){
+				batch.accumulate(this.first + start, Math.min(this.chunk, this.count - start));
+			}
+		}
+
+		/*
+		 * Adds learning rate times the gradients of all workers, summed in
+		 * worker order, to the worker's slice of every layer of weights, and
+		 * clears them.
+		 */
+		private void reduce(int worker){
+			int threads = this.workers.length;
+			for (int l = 0; l < numHiddenLayers+1; l++){
+				double[] w = weights[l];
+				int from = (int) ((long) w.length * worker / threads);
+				int to = (int) ((long) w.length * (worker + 1) / threads);
+				double[] sum = this.workers[0].gradient[l];
+				for (int t = 1; t < threads; t++){
+					double[] g = this.workers[t].gradient[l];
+					for (int i = from; i < to; i++){
+						sum[i] += g[i];
+						g[i] = 0;
+					}
+				}
+				for (int i = from; i < to; i++){
+					w[i] += learningRate * sum[i];
+					sum[i] = 0;
+				}
+			}
+		}
+
+		/* The squared output errors summed since last called, in worker order. */
+		double takeSquaredError(){
+			double sum = 0;
+			for (MiniBatch batch : this.workers){
+				sum += batch.squaredError;
+				batch.squaredError = 0;
+			}
+			return sum;
+		}
+
+		private void run(List<Callable<Void>> tasks){
+			try {
+				for (Future<Void> future : this.pool.invokeAll(tasks)){
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Training interrupted.", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Training failed.", e.getCause());
+			}
+		}
+
+		void shutdown(){
+			this.pool.shutdown();
+		}
+	}
+
+	/*
+	 * The buffers to train on up to capacity examples at a time. Activations
+	 * and errors are matrices with a row per example, row-major:
+	 * activation[l][b * layerSizes[l] + i] is the activation of node i of
+	 * layer l for example b of the batch, and error[l] holds layer l+1 the
+	 * same way. gradient is shaped like the weights and sums the gradients
+	 * of the examples until applied.
+	 */
+	private class MiniBatch {
+		final double[][] activation;
+		final double[][] error;
+		final double[][] gradient;
+		double squaredError;
+
+		MiniBatch(int capacity){
+			this.activation = new double[numHiddenLayers+2][];
+			this.error = new double[numHiddenLayers+1][];
+			this.gradient = new double[numHiddenLayers+1][];
+			this.activation[0] = new double[capacity * layerSizes[0]];
+			for (int l = 0; l < numHiddenLayers+1; l++) {
+				this.activation[l+1] = new double[capacity * layerSizes[l+1]];
+				this.error[l] = new double[capacity * layerSizes[l+1]];
+				this.gradient[l] = new double[weights[l].length];
+			}
+		}
+
+		/*
+		 * Adds the gradients of the count examples from first on to gradient,
+		 * and their squared output errors to squaredError.
+		 */
+		void accumulate(int first, int count){
+			int out = numHiddenLayers+1;
+			for (int b = 0; b < count; b++){
+				System.arraycopy(inputs[first + b], 0, activation[0], b * inputLayerSize, inputLayerSize);
+			}
+			for (int l = 0; l < out; l++){
+				multiply(activation[l], weights[l], activation[l+1], count, layerSizes[l], layerSizes[l+1]);
+				kernels.sigmoid(activation[l+1], count * layerSizes[l+1]);
+			}
+
+			// Errors at the output layer, then back through the hidden layers.
+			double[] a = activation[out];
+			double[] e = error[out-1];
+			for (int b = 0; b < count; b++){
+				double[] desired = desiredOutput[first + b];
+				for (int j = 0; j < outputLayerSize; j++){
+					int at = b * outputLayerSize + j;
+					e[at] = sigmoidDerivative(a[at]) * (desired[j] - a[at]);
+					squaredError += e[at] * e[at];
+				}
+			}
+			for (int l = out - 2; l >= 0; l--){
+				backPropagate(weights[l+1], error[l+1], activation[l+1], error[l], count, layerSizes[l+1], layerSizes[l+2]);
+			}
+
+			for (int l = 0; l < out; l++){
+				multiplyTransposed(activation[l], error[l], gradient[l], count, layerSizes[l], layerSizes[l+1]);
+			}
+		}
+	}
+
+	/* c (rows x n) = a (rows x k) * w (k x n), all row-major. */
+	private static void multiply(double[] a, double[] w, double[] c, int rows, int k, int n){
+		for (int i = 0; i < rows * n; i++){
+			c[i] = 0;
+		}
+		multiplyAdd(a, k, 1, w, c, rows, k, n);
+	}
+
+	/*
+	 * g (k x n) += a^T * d, where a is rows x k and d is rows x n, all
+	 * row-major: the summed outer products of the rows of a and d.
+	 */
+	private static void multiplyTransposed(double[] a, double[] d, double[] g, int rows, int k, int n){
+		multiplyAdd(a, 1, k, d, g, k, rows, n);
+	}
+
+	/*
+	 * c (rows x n) += x * m, where m is depth x n and row-major, and x is
+	 * rows x depth with element (r, t) at a[r * rowStride + t * depthStride]
+	 * (so a is read either as is or transposed). Four rows of c are updated
+	 * from four rows of m at a time: every element of m loaded serves four
+	 * rows, and every element of c loaded and stored takes four products,
+	 * with the loop over a row left for the JIT to vectorize. Leftover rows
+	 * and depth are done one at a time.
+	 */
+	private static void multiplyAdd(double[] a, int rowStride, int depthStride, double[] m, double[] c, int rows,
+			int depth, int n){
+		int r0 = 0;
+		for (; r0 + 4 <= rows; r0 += 4){
+			int c0 = r0 * n, c1 = c0 + n, c2 = c1 + n, c3 = c2 + n;
+			int t = 0;
+			for (; t + 4 <= depth; t += 4){
+				int a0 = r0 * rowStride + t * depthStride;
+				int a1 = a0 + rowStride, a2 = a1 + rowStride, a3 = a2 + rowStride;
+				int s1 = depthStride, s2 = 2 * depthStride, s3 = 3 * depthStride;
+				double x00 = a[a0], x01 = a[a0 + s1], x02 = a[a0 + s2], x03 = a[a0 + s3];
+				double x10 = a[a1], x11 = a[a1 + s1], x12 = a[a1 + s2], x13 = a[a1 + s3];
+				double x20 = a[a2], x21 = a[a2 + s1], x22 = a[a2 + s2], x23 = a[a2 + s3];
+				double x30 = a[a3], x31 = a[a3 + s1], x32 = a[a3 + s2], x33 = a[a3 + s3];
+				int m0 = t * n, m1 = m0 + n, m2 = m1 + n, m3 = m2 + n;
+				for (int j = 0; j < n; j++){
+					double w0 = m[m0 + j], w1 = m[m1 + j], w2 = m[m2 + j], w3 = m[m3 + j];
+					c[c0 + j] += x00 * w0 + x01 * w1 + x02 * w2 + x03 * w3;
+					c[c1 + j] += x10 * w0 + x11 * w1 + x12 * w2 + x13 * w3;
+					c[c2 + j] += x20 * w0 + x21 * w1 + x22 * w2 + x23 * w3;
+					c[c3 + j] += x30 * w0 + x31 * w1 + x32 * w2 + x33 * w3;
+				}
+			}
+			for (; t < depth; t++){
+				for (int r = r0; r < r0 + 4; r++){
+					double x = a[r * rowStride + t * depthStride];
+					for (int j = 0; j < n; j++){
+						c[r * n + j] += x * m[t * n + j];
+					}
+				}
+			}
+		}
+		for (; r0 < rows; r0++){
+			for (int t = 0; t < depth; t++){
+				double x = a[r0 * rowStride + t * depthStride];
+				for (int j = 0; j < n; j++){
+					c[r0 * n + j] += x * m[t * n + j];
+				}
+			}
+		}
+	}
+
+	/*
+	 * e (rows x k) = (d (rows x n) * w^T) times the sigmoid derivative of the
+	 * activations a (rows x k), for w of k x n: the errors of a layer from
+	 * those of the next, for every example of a batch.
+	 */
+	private static void backPropagate(double[] w, double[] d, double[] a, double[] e, int rows, int k, int n){
+		for (int b = 0; b < rows; b++){
+			int dRow = b * n;
+			for (int i = 0; i < k; i++){
+				double sum = 0;
+				int wRow = i * n;
+				for (int j = 0; j < n; j++){
+					sum += w[wRow + j] * d[dRow + j];
+				}
+				e[b * k + i] = sigmoidDerivative(a[b * k + i]) * sum;
 			}
 		}
 	}
 	
 	private void calculateError(double[][] error, double[][] activation, int fromLayerSize, int toLayerSize, int l){
 		double e;
+		double[] w = this.weights[l+1];
+		double[] next = error[l+1];
 		for (int i = 0; i < fromLayerSize; i++) {
-			e = 0;
-			for (int j = 0; j < toLayerSize; j++){
-				e += this.weights[l+1][i][j] * error[l+1][j];
-			}
+			e = this.kernels.dot(w, i * toLayerSize, next, 0, toLayerSize);
 			// Recall that activation is off by one, due to activation of input layer.
 			error[l][i] = sigmoidDerivative(activation[l+1][i]) * e;
 		}
 	}
 	
 	private void adjustWeights(double[][] activation, double[][] error, int fromLayerSize, int toLayerSize, int l){
+		double[] w = this.weights[l];
+		double[] e = error[l];
 		for (int i = 0; i < fromLayerSize; i++){
-			for (int j = 0; j < toLayerSize; j++){
-				this.weights[l][i][j] += this.learningRate * activation[l][i] * error[l][j];
-			}
+			this.kernels.axpy(this.learningRate * activation[l][i], e, 0, w, i * toLayerSize, toLayerSize);
 		}		
 	}
 
@@ -187,7 +612,7 @@ public class FeedForwardNetwork {
 		System.out.println("Input layer.");		
 		for (int i = 0; i < this.inputLayerSize; i++){
 			for (int j = 0; j < this.hiddenLayerSize; j++){
-				System.out.printf("Weight from input node %d to node %d is %f.\n", i, j, this.weights[0][i][j]);
+				System.out.printf("Weight from input node %d to node %d is %f.\n", i, j, this.weights[0][i * this.hiddenLayerSize + j]);
 			}
 		}
 		
@@ -195,7 +620,7 @@ public class FeedForwardNetwork {
 		for (int l = 0; l < this.numHiddenLayers-1; l++) {
 			for (int i = 0; i < this.hiddenLayerSize; i++){
 				for (int j = 0; j < this.hiddenLayerSize; j++){
-					System.out.printf("Weight at hidden layer %d from node %d to node %d is %f.\n", l, i, j, this.weights[l][i][j]);
+					System.out.printf("Weight at hidden layer %d from node %d to node %d is %f.\n", l, i, j, this.weights[l+1][i * this.hiddenLayerSize + j]);
 				}
 			}
 		}
@@ -203,32 +628,17 @@ public class FeedForwardNetwork {
 		System.out.println("\nOutput layer.");
 		for (int i = 0; i < this.hiddenLayerSize; i++){
 			for (int j = 0; j < this.outputLayerSize; j++){
-				System.out.printf("Weight from node %d to output node %d is %f.\n", i, j, this.weights[this.numHiddenLayers][i][j]);
+				System.out.printf("Weight from node %d to output node %d is %f.\n", i, j, this.weights[this.numHiddenLayers][i * this.outputLayerSize + j]);
 			}
 		}
 }
 	
 	public void testNetwork(){
+		double[][] activation = this.activation;
 		int count = 0;
 		//Run through entire training set once.
 		for (int example = 0; example < this.trainingSetSize; example++){
-			// We store the activation of each node (over all input and hidden layers) because we need that data during back propagation.
-			// Please notice that in order to simplify the code, we store the activation of the input layer too.
-			double[][] activation = new double[this.numHiddenLayers+2][this.maxLayerSize];
-			// Reading in the activation from the training data example
-			for (int i = 0; i < this.inputLayerSize; i++){
-				activation[0][i] = this.inputs[example][i];
-			}
-
-			// There may be different sizes for the input, hidden and output layers, hence there are three different calls for feedForeard
-			// input to first hidden layer
-			feedForward(activation, this.inputLayerSize, this.hiddenLayerSize, 0);
-			// hidden to hidden layers
-			for (int l = 1; l < this.numHiddenLayers; l++){
-				feedForward(activation, this.hiddenLayerSize, this.hiddenLayerSize, l);					
-			}
-			// last hidden layer to output layer
-			feedForward(activation, this.hiddenLayerSize, this.outputLayerSize, this.numHiddenLayers);
+			forwardPass(this.inputs[example]);
 
 			for (int j = 0; j < this.outputLayerSize; j++){
 				if (Math.abs(activation[this.numHiddenLayers+1][j] - this.desiredOutput[example][j]) > 0.1) {
@@ -248,8 +658,10 @@ public class FeedForwardNetwork {
 	 * @param test_inputs - the actual testing set.
 	 * @param test_labels - the testing sets abels.
 	 * @param verbose - displays information regarding failures.
+	 * @return the overall accuracy, one minus the errors per example.
 	 */
-	public void testNetworkBatch(int testingSetSize, double[][] test_inputs, double[][] test_labels, boolean verbose) {
+	public double testNetworkBatch(int testingSetSize, double[][] test_inputs, double[][] test_labels, boolean verbose) {
+		double[][] activation = this.activation;
 		// Used for progress bar. Uncomment if progress bar is desired. 
 		// long startTime;
 		int error_count = 0;
@@ -258,23 +670,7 @@ public class FeedForwardNetwork {
 		    // Used for progress bar. Uncomment is progress bar is desired. 
 			// startTime = System.currentTimeMillis();
 			
-			// We store the activation of each node (over all input and hidden layers) because we need that data during back propagation.
-			// Please notice that in order to simplify the code, we store the activation of the input layer too.
-			double[][] activation = new double[this.numHiddenLayers+2][this.maxLayerSize];
-			// Reading in the activation from the training data example
-			for (int i = 0; i < this.inputLayerSize; i++){
-				activation[0][i] = test_inputs[example][i];
-			}
-	
-			// There may be different sizes for the input, hidden and output layers, hence there are three different calls for feedForeard
-			// input to first hidden layer
-			feedForward(activation, this.inputLayerSize, this.hiddenLayerSize, 0);
-			// hidden to hidden layers
-			for (int l = 1; l < this.numHiddenLayers; l++){
-				feedForward(activation, this.hiddenLayerSize, this.hiddenLayerSize, l);					
-			}
-			// last hidden layer to output layer
-			feedForward(activation, this.hiddenLayerSize, this.outputLayerSize, this.numHiddenLayers);
+			forwardPass(test_inputs[example]);
 	
 			for (int j = 0; j < this.outputLayerSize; j++){
 				if (Math.abs(activation[this.numHiddenLayers+1][j] - test_labels[example][j]) > 0.1) {
@@ -302,8 +698,21 @@ public class FeedForwardNetwork {
 		System.out.println("Number correct: " + (testingSetSize - error_count) + " out of: " + testingSetSize);
 		System.out.println("Overall accuracy: " +   round((((double)(testingSetSize-error_count)/testingSetSize)), 4));
 		System.out.println("Global error: " + Math.sqrt(globalError/(this.trainingSetSize*this.outputLayerSize)));
+		return (double)(testingSetSize-error_count)/testingSetSize;
 	}
 	
+	/*
+	 * Bytes allocated so far by the current thread, as reported by HotSpot
+	 * (the same counter the JMH gc profiler reads), or -1 if unavailable.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
 	public static double round(double value, int places) {
 	    if (places < 0) {
 	    	throw new IllegalArgumentException();
@@ -0,0 +1,229 @@
+import java.util.Random;
+
+/**
+ * FeedForwardNetwork in single precision: the weights, activations, errors
+ * and training inputs are floats, so they take half the memory, and half
+ * the memory traffic, of FeedForwardNetwork's doubles, and a SIMD register
+ * holds twice as many of them. Sums are kept in double where rounding
+ * would build up over many terms: the inputs of every node (784 terms for
+ * the first hidden layer of MNIST), summed in a row of doubles before the
+ * sigmoid, the errors back-propagated from the next layer and the global
+ * error. Only the weight updates are done in float, one rounding per
+ * update.
+ *
+ * Trains per example, as FeedForwardNetwork.trainNetwork(iterations,
+ * verbose) does. Initialized with the same seed, it starts from the
+ * weights of a FeedForwardNetwork of the same shape, rounded to float, so
+ * the two can be compared; Training -precision both does that.
+ */
+public class FloatFeedForwardNetwork {
+
+	private final int inputLayerSize;
+	private final int hiddenLayerSize;
+	private final int numHiddenLayers;
+	private final int outputLayerSize;
+	private final int[] layerSizes; // input, hidden layers, output
+	public double globalError = 0;
+
+	public FloatFeedForwardNetwork(int inputLayerSize, int hiddenLayerSize, int numHiddenLayers, int outputLayerSize){
+		if (inputLayerSize <= 0 || hiddenLayerSize <= 0 || numHiddenLayers <= 0 || outputLayerSize <= 0) {
+			System.out.println("Every layer must have at least one neuron, and there must be at least one hidden layer.");
+			System.exit(0);
+		}
+		this.inputLayerSize = inputLayerSize;
+		this.hiddenLayerSize = hiddenLayerSize;
+		this.numHiddenLayers = numHiddenLayers;
+		this.outputLayerSize = outputLayerSize;
+
+		this.layerSizes = new int[numHiddenLayers + 2];
+		this.layerSizes[0] = inputLayerSize;
+		for (int l = 1; l <= numHiddenLayers; l++) {
+			this.layerSizes[l] = hiddenLayerSize;
+		}
+		this.layerSizes[numHiddenLayers + 1] = outputLayerSize;
+	}
+
+	private int trainingSetSize = 0;
+	private double learningRate = 0;
+	private float inputs[][];
+	private double desiredOutput[][];
+	// Laid out as in FeedForwardNetwork: weights[l][i * layerSizes[l+1] + j]
+	// is the weight from node i of layer l to node j of layer l+1,
+	// activation[l] holds layer l and error[l] layer l+1.
+	private float[][] weights;
+	private float[][] activation;
+	private float[][] error;
+	// The inputs of the nodes of one layer, summed in double.
+	private double[] sums;
+	// The inner loops, as FeedForwardNetwork picks them.
+	private NetworkKernels kernels = NetworkKernels.best();
+
+	/***
+	 * Sets up the network to train on inputs, with initial weights drawn as
+	 * FeedForwardNetwork.initNetwork(inputs, desiredOutput, learningRate,
+	 * initialWeightOffset, seed) draws them.
+	 */
+	@SuppressWarnings("hiding")
+	public void initNetwork(float[][] inputs, double[][] desiredOutput, double learningRate, double initialWeightOffset, long seed) {
+		this.trainingSetSize = inputs.length;
+		if (this.trainingSetSize == 0) {
+			System.out.println("No training data.");
+			System.exit(0);
+		}
+		if (inputs[0].length != this.inputLayerSize) {
+			System.out.println("Mismatch between input layer size and training data length.");
+			System.exit(0);
+		}
+		this.inputs = inputs;
+		this.desiredOutput = desiredOutput;
+		this.learningRate = learningRate;
+
+		this.weights = new float[this.numHiddenLayers+1][];
+		this.activation = new float[this.numHiddenLayers+2][];
+		this.error = new float[this.numHiddenLayers+1][];
+		for (int l = 0; l < this.numHiddenLayers+1; l++) {
+			this.weights[l] = new float[this.layerSizes[l] * this.layerSizes[l+1]];
+			this.activation[l+1] = new float[this.layerSizes[l+1]];
+			this.error[l] = new float[this.layerSizes[l+1]];
+		}
+
+		this.sums = new double[Math.max(this.hiddenLayerSize, this.outputLayerSize)];
+
+		Random random = new Random(seed);
+		for (int l = 0; l < this.numHiddenLayers+1; l++) {
+			int fromLayerSize = this.layerSizes[l];
+			int toLayerSize = this.layerSizes[l+1];
+			for (int i = 0; i < this.hiddenLayerSize; i++){
+				for (int j = 0; j < this.hiddenLayerSize; j++){
+					double weight = random.nextDouble() - initialWeightOffset;
+					if (i < fromLayerSize && j < toLayerSize) {
+						this.weights[l][i * toLayerSize + j] = (float) weight;
+					}
+				}
+			}
+		}
+	}
+
+	/* Traditional Getters and Setters */
+	public NetworkKernels getKernels() { return this.kernels; }
+	public void setKernels(NetworkKernels kernels) { this.kernels = kernels; }
+
+	/* Bytes taken by the weights. */
+	public long getMemoryBytes() {
+		long count = 0;
+		for (float[] layer : this.weights) {
+			count += layer.length;
+		}
+		return count * 4;
+	}
+
+	private static double sigmoidDerivative(float value){
+		return (double) value * (1 - value);
+	}
+
+	private void feedForward(int l){
+		float[] w = this.weights[l];
+		float[] from = this.activation[l];
+		float[] in = this.activation[l+1];
+		double[] sum = this.sums;
+		int toLayerSize = this.layerSizes[l+1];
+		for (int j = 0; j < toLayerSize; j++){
+			sum[j] = 0;
+		}
+		for (int i = 0; i < this.layerSizes[l]; i++){
+			this.kernels.axpy(from[i], w, i * toLayerSize, sum, 0, toLayerSize);
+		}
+		this.kernels.sigmoid(sum, toLayerSize);
+		for (int j = 0; j < toLayerSize; j++){
+			in[j] = (float) sum[j];
+		}
+	}
+
+	private void forwardPass(float[] input){
+		this.activation[0] = input;
+		for (int l = 0; l < this.numHiddenLayers+1; l++){
+			feedForward(l);
+		}
+	}
+
+	public void trainNetwork(int iterations, boolean verbose){
+		int out = this.numHiddenLayers;
+		for (int k = 0; k < iterations; k++){
+			globalError = 0.0;
+			for (int example = 0; example < this.trainingSetSize; example++){
+				forwardPass(this.inputs[example]);
+
+				// Errors at the output layer, then back through the hidden layers.
+				float[] output = this.activation[out+1];
+				for (int j = 0; j < this.outputLayerSize; j++) {
+					double e = sigmoidDerivative(output[j]) * (this.desiredOutput[example][j] - output[j]);
+					this.error[out][j] = (float) e;
+					globalError += e * e;
+				}
+				for (int l = out - 1; l >= 0; l--){
+					calculateError(l);
+				}
+
+				for (int l = out; l >= 0; l--){
+					adjustWeights(l);
+				}
+			}
+			if (verbose) {
+				System.out.println("Completed iteration " + (k+1) +" out of "+ iterations + " " + FeedForwardNetwork.round((((double)(k+1)/iterations)), 4) * 100 + "% Complete");
+				System.out.println("Global error: " + Math.sqrt(globalError/(this.trainingSetSize*this.outputLayerSize)));
+			}
+		}
+	}
+
+	private void calculateError(int l){
+		float[] w = this.weights[l+1];
+		float[] next = this.error[l+1];
+		int fromLayerSize = this.layerSizes[l+1];
+		int toLayerSize = this.layerSizes[l+2];
+		for (int i = 0; i < fromLayerSize; i++) {
+			double e = this.kernels.dot(w, i * toLayerSize, next, 0, toLayerSize);
+			this.error[l][i] = (float) (sigmoidDerivative(this.activation[l+1][i]) * e);
+		}
+	}
+
+	private void adjustWeights(int l){
+		float[] w = this.weights[l];
+		float[] e = this.error[l];
+		int fromLayerSize = this.layerSizes[l];
+		int toLayerSize = this.layerSizes[l+1];
+		for (int i = 0; i < fromLayerSize; i++){
+			float a = (float) (this.learningRate * this.activation[l][i]);
+			this.kernels.axpy(a, e, 0, w, i * toLayerSize, toLayerSize);
+		}
+	}
+
+	/***
+	 * Tests the network on a test set, counting an output as an error when it
+	 * is more than 0.1 from the label, as FeedForwardNetwork does.
+	 *
+	 * @param testingSetSize - size of testing set.
+	 * @param test_inputs - the actual testing set.
+	 * @param test_labels - the testing sets labels.
+	 * @param verbose - prints the number of errors and the accuracy.
+	 * @return the overall accuracy, one minus the errors per example.
+	 */
+	public double testNetworkBatch(int testingSetSize, float[][] test_inputs, double[][] test_labels, boolean verbose) {
+		float[] output = this.activation[this.numHiddenLayers+1];
+		int error_count = 0;
+		for (int example = 0; example < testingSetSize; example++){
+			forwardPass(test_inputs[example]);
+			for (int j = 0; j < this.outputLayerSize; j++){
+				if (Math.abs(output[j] - test_labels[example][j]) > 0.1) {
+					error_count++;
+				}
+			}
+		}
+		double accuracy = (double) (testingSetSize - error_count) / testingSetSize;
+		if (verbose) {
+			System.out.println(error_count + " errors");
+			System.out.println("Number correct: " + (testingSetSize - error_count) + " out of: " + testingSetSize);
+			System.out.println("Overall accuracy: " + FeedForwardNetwork.round(accuracy, 4));
+		}
+		return accuracy;
+	}
+}
@@ -0,0 +1,209 @@
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the scalar and the Vector API NetworkKernels at the layer sizes
+ * Training uses for MNIST (784 inputs, 100 hidden nodes, 10 outputs), in the
+ * manner of a JMH benchmark: each operation is warmed up until its time per
+ * run settles, for at least a second, and then run back to back for -time
+ * ms. For every loop of per-example training, as FeedForwardNetwork runs it
+ * on one layer (and the largest of them as FloatFeedForwardNetwork runs
+ * them, on floats, with the inputs of a layer summed in double), and for
+ * training on a set of examples, this prints the time per operation, the
+ * GFLOP/s and the speedup of the vector kernels over the scalar ones. The
+ * vector kernels are left out if they cannot be loaded; see NetworkKernels.
+ *
+ * Run from the NN directory, e.g.
+ * java --add-modules jdk.incubator.vector -cp bin KernelBenchmark [-time ms]
+ */
+public class KernelBenchmark {
+	private static final int INPUTS = 784;
+	private static final int HIDDEN = 100;
+	private static final int OUTPUTS = 10;
+	private static final int EXAMPLES = 100;
+	// Warm-up takes at least a second, then stops when a round is within 5%
+	// of the one before, or after ten seconds.
+	private static final long MIN_WARMUP_MS = 1000;
+	private static final long MAX_WARMUP_MS = 10000;
+	private static final double WARMUP_TOLERANCE = 0.05;
+
+	private interface Operation {
+		void run(NetworkKernels kernels);
+	}
+
+	public static void main(String[] args) {
+		long time = 1000;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-time": time = Long.parseLong(args[i + 1]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		NetworkKernels scalar = NetworkKernels.scalar();
+		NetworkKernels vector = NetworkKernels.vector();
+		if (vector == null) {
+			System.out.println("Vector kernels not available, run with --add-modules jdk.incubator.vector after compiling vector/VectorKernels.java.");
+		} else {
+			System.out.println("Vector kernels: " + vector.name());
+		}
+
+		Random random = new Random(1);
+		double[] input = values(random, INPUTS, 1);
+		double[] hidden = values(random, HIDDEN, 1);
+		double[] output = new double[OUTPUTS];
+		double[] hiddenError = values(random, HIDDEN, 0.01);
+		double[] outputError = values(random, OUTPUTS, 0.01);
+		double[] inputWeights = values(random, INPUTS * HIDDEN, 0.1);
+		double[] outputWeights = values(random, HIDDEN * OUTPUTS, 0.1);
+		double[] sink = new double[1];
+		float[] floatInput = floats(input);
+		float[] floatHidden = floats(hidden);
+		double[] sums = new double[HIDDEN];
+		float[] floatHiddenError = floats(hiddenError);
+		float[] floatInputWeights = floats(inputWeights);
+
+		FeedForwardNetwork network = network(random);
+
+		System.out.printf("%-28s %-9s %12s %10s %8s%n", "operation", "kernels", "ns/op", "GFLOP/s", "speedup");
+		measure("feedForward 784x100", 2L * INPUTS * HIDDEN, scalar, vector, time,
+				k -> feedForward(k, input, inputWeights, hidden, INPUTS, HIDDEN));
+		measure("feedForward 100x10", 2L * HIDDEN * OUTPUTS, scalar, vector, time,
+				k -> feedForward(k, hidden, outputWeights, output, HIDDEN, OUTPUTS));
+		measure("calculateError 100x10", 2L * HIDDEN * OUTPUTS, scalar, vector, time, k -> {
+			double sum = 0;
+			for (int i = 0; i < HIDDEN; i++) {
+				sum += k.dot(outputWeights, i * OUTPUTS, outputError, 0, OUTPUTS);
+			}
+			sink[0] = sum;
+		});
+		// Learning rates small enough that the weights hardly change.
+		measure("adjustWeights 100x10", 2L * HIDDEN * OUTPUTS, scalar, vector, time,
+				k -> adjustWeights(k, hidden, outputError, outputWeights, HIDDEN, OUTPUTS));
+		measure("adjustWeights 784x100", 2L * INPUTS * HIDDEN, scalar, vector, time,
+				k -> adjustWeights(k, input, hiddenError, inputWeights, INPUTS, HIDDEN));
+		measure("feedForward 784x100 float", 2L * INPUTS * HIDDEN, scalar, vector, time, k -> {
+			for (int j = 0; j < HIDDEN; j++) {
+				sums[j] = 0;
+			}
+			for (int i = 0; i < INPUTS; i++) {
+				k.axpy(floatInput[i], floatInputWeights, i * HIDDEN, sums, 0, HIDDEN);
+			}
+			k.sigmoid(sums, HIDDEN);
+			for (int j = 0; j < HIDDEN; j++) {
+				floatHidden[j] = (float) sums[j];
+			}
+		});
+		measure("adjustWeights 784x100 float", 2L * INPUTS * HIDDEN, scalar, vector, time, k -> {
+			for (int i = 0; i < INPUTS; i++) {
+				k.axpy(1e-9f * floatInput[i], floatHiddenError, 0, floatInputWeights, i * HIDDEN, HIDDEN);
+			}
+		});
+		measure("sigmoid 100", HIDDEN, scalar, vector, time, k -> {
+			System.arraycopy(hiddenError, 0, hidden, 0, HIDDEN);
+			k.sigmoid(hidden, HIDDEN);
+		});
+		// A forward and a backward pass and the weight updates of every example.
+		measure("train 784-100-10, " + EXAMPLES + " ex", 6L * (INPUTS * HIDDEN + HIDDEN * OUTPUTS) * EXAMPLES, scalar,
+				vector, time, k -> {
+					network.setKernels(k);
+					network.trainNetwork(1, false);
+				});
+	}
+
+	private static void feedForward(NetworkKernels kernels, double[] from, double[] w, double[] in, int fromSize,
+			int toSize) {
+		for (int j = 0; j < toSize; j++) {
+			in[j] = 0;
+		}
+		for (int i = 0; i < fromSize; i++) {
+			kernels.axpy(from[i], w, i * toSize, in, 0, toSize);
+		}
+		kernels.sigmoid(in, toSize);
+	}
+
+	private static void adjustWeights(NetworkKernels kernels, double[] from, double[] e, double[] w, int fromSize,
+			int toSize) {
+		for (int i = 0; i < fromSize; i++) {
+			kernels.axpy(1e-9 * from[i], e, 0, w, i * toSize, toSize);
+		}
+	}
+
+	/* A 784-100-10 network on EXAMPLES random examples, as Training builds it. */
+	private static FeedForwardNetwork network(Random random) {
+		double[][] inputs = new double[EXAMPLES][];
+		double[][] desired = new double[EXAMPLES][OUTPUTS];
+		for (int e = 0; e < EXAMPLES; e++) {
+			inputs[e] = values(random, INPUTS, 1);
+			desired[e][random.nextInt(OUTPUTS)] = 1;
+		}
+		FeedForwardNetwork network = new FeedForwardNetwork(INPUTS, HIDDEN, 1, OUTPUTS);
+		network.initNetwork(inputs, desired, 0.001, 1, 1);
+		return network;
+	}
+
+	private static float[] floats(double[] values) {
+		float[] floats = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			floats[i] = (float) values[i];
+		}
+		return floats;
+	}
+
+	private static double[] values(Random random, int n, double scale) {
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = random.nextDouble() * scale;
+		}
+		return values;
+	}
+
+	private static void measure(String name, long flops, NetworkKernels scalar, NetworkKernels vector, long time,
+			Operation operation) {
+		double scalarNanos = nanosPerOperation(operation, scalar, time);
+		print(name, "scalar", flops, scalarNanos, 1);
+		if (vector != null) {
+			double vectorNanos = nanosPerOperation(operation, vector, time);
+			print(name, "vector", flops, vectorNanos, scalarNanos / vectorNanos);
+		}
+	}
+
+	private static void print(String name, String kernels, long flops, double nanos, double speedup) {
+		System.out.printf(Locale.ROOT, "%-28s %-9s %12.1f %10.2f %7.2fx%n", name, kernels, nanos, flops / nanos, speedup);
+	}
+
+	/*
+	 * Warms up in rounds of time ms, for at least MIN_WARMUP_MS in all and
+	 * until two rounds in a row agree within WARMUP_TOLERANCE (or the warm-up
+	 * has taken MAX_WARMUP_MS), then returns the average time of a run over
+	 * the next time ms. The Vector API is orders of magnitude slower before
+	 * the JIT compiles it, so a short warm-up would measure the interpreter;
+	 * and with a short time every interpreted round is one run, so the rounds
+	 * agree before the JIT starts.
+	 */
+	private static double nanosPerOperation(Operation operation, NetworkKernels kernels, long time) {
+		long start = System.nanoTime();
+		double previous = run(operation, kernels, time);
+		while (true) {
+			double nanos = run(operation, kernels, time);
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			boolean stable = Math.abs(nanos - previous) <= WARMUP_TOLERANCE * previous;
+			if ((elapsed >= MIN_WARMUP_MS && stable) || elapsed >= MAX_WARMUP_MS) {
+				break;
+			}
+			previous = nanos;
+		}
+		return run(operation, kernels, time);
+	}
+
+	private static double run(Operation operation, NetworkKernels kernels, long time) {
+		long start = System.nanoTime();
+		long end = start + time * 1000000;
+		long runs = 0;
+		long now;
+		do {
+			operation.run(kernels);
+			runs++;
+		} while ((now = System.nanoTime()) < end);
+		return (double) (now - start) / runs;
+	}
+}
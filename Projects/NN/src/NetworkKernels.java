@@ -0,0 +1,61 @@
+/**
+ * The inner loops of FeedForwardNetwork and FloatFeedForwardNetwork: dot
+ * products (the error of a node from the errors of the next layer),
+ * y += alpha * x over a row of weights (the inputs of a layer, summed row by
+ * row, and the weight updates, one outer product row at a time) and the
+ * sigmoid of a whole layer.
+ *
+ * There are two implementations: scalar(), plain loops that run on any
+ * Java, and vector(), VectorKernels in the vector folder, written with the
+ * Vector API (jdk.incubator.vector) so the loops run on SIMD registers. The
+ * Vector API needs Java 16 or later with the incubator module added, and
+ * VectorKernels is compiled on its own, e.g. from the NN directory:
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/VectorKernels.java
+ * java --add-modules jdk.incubator.vector -cp bin Training
+ * Without the module or the class, vector() is null and best() falls back
+ * to the scalar loops.
+ */
+public interface NetworkKernels {
+	/* The sum of a[aFrom + i] * b[bFrom + i] for i < n. */
+	double dot(double[] a, int aFrom, double[] b, int bFrom, int n);
+
+	/* y[yFrom + i] += x[xFrom + i] * alpha for i < n. */
+	void axpy(double alpha, double[] x, int xFrom, double[] y, int yFrom, int n);
+
+	/* a[i] = 1 / (1 + e^-a[i]) for i < n. */
+	void sigmoid(double[] a, int n);
+
+	/*
+	 * The same for FloatFeedForwardNetwork: floats, with twice the values
+	 * per SIMD register, except that the dot product is summed in double.
+	 */
+	double dot(float[] a, int aFrom, float[] b, int bFrom, int n);
+
+	void axpy(float alpha, float[] x, int xFrom, float[] y, int yFrom, int n);
+
+	/* y[yFrom + i] += x[xFrom + i] * alpha for i < n, summed in double. */
+	void axpy(float alpha, float[] x, int xFrom, double[] y, int yFrom, int n);
+
+	void sigmoid(float[] a, int n);
+
+	String name();
+
+	static NetworkKernels scalar() {
+		return ScalarKernels.INSTANCE;
+	}
+
+	/* The Vector API kernels, or null if they cannot be loaded. */
+	static NetworkKernels vector() {
+		try {
+			return (NetworkKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/* The vector kernels if they can be loaded, otherwise the scalar ones. */
+	static NetworkKernels best() {
+		NetworkKernels vector = vector();
+		return vector != null ? vector : scalar();
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * NetworkKernels as plain loops, in the order FeedForwardNetwork has always
+ * computed them, so training with them gives the same weights to the last
+ * bit. The JIT may still vectorize the axpy loop by itself, but not the dot
+ * product, as that would change the order of the sum.
+ */
+public class ScalarKernels implements NetworkKernels {
+	static final ScalarKernels INSTANCE = new ScalarKernels();
+
+	@Override
+	public double dot(double[] a, int aFrom, double[] b, int bFrom, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += a[aFrom + i] * b[bFrom + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xFrom, double[] y, int yFrom, int n) {
+		for (int i = 0; i < n; i++) {
+			y[yFrom + i] += x[xFrom + i] * alpha;
+		}
+	}
+
+	@Override
+	public void sigmoid(double[] a, int n) {
+		for (int i = 0; i < n; i++) {
+			a[i] = 1.0 / (1 + Math.exp(-1.0 * a[i]));
+		}
+	}
+
+	@Override
+	public double dot(float[] a, int aFrom, float[] b, int bFrom, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += (double) a[aFrom + i] * b[bFrom + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xFrom, float[] y, int yFrom, int n) {
+		for (int i = 0; i < n; i++) {
+			y[yFrom + i] += x[xFrom + i] * alpha;
+		}
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xFrom, double[] y, int yFrom, int n) {
+		for (int i = 0; i < n; i++) {
+			y[yFrom + i] += (double) x[xFrom + i] * alpha;
+		}
+	}
+
+	@Override
+	public void sigmoid(float[] a, int n) {
+		for (int i = 0; i < n; i++) {
+			a[i] = (float) (1.0 / (1 + Math.exp(-1.0 * a[i])));
+		}
+	}
+
+	@Override
+	public String name() {
+		return "scalar";
+	}
+}
@@ -3,6 +3,7 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Random;
 
 public class Training {
 	
@@ -10,6 +11,12 @@ public class Training {
 	private static double[][] desiredOutput;
 	private static double[][] testingDataSet;
 	private static double[][] desiredTestOutput;
+	// The images as floats, for the float precision network.
+	private static float[][] floatTrainingDataSet;
+	private static float[][] floatTestingDataSet;
+	// Which of the two precisions readData stores the images in.
+	private static boolean readDoubles = true;
+	private static boolean readFloats = false;
 	private static int testDataSize = 0;
 	private static int magicNumber = 0;
 	private static int numberOfItems = 0;
@@ -17,6 +24,40 @@ public class Training {
 	private static int nCols = 0;
 
 	public static void main(String[] args) {
+		// Options: -batch size, the examples per weight update (1 updates after every example)
+		// -threads n, the threads to train a batch on (all cores by default)
+		// -seed n, seeds the initial weights and trains deterministically, so runs with
+		// the same seed, batch size and threads give the same network
+		// -precision double|float|both, the network to train; both trains the two from
+		// the same initial weights and prints the difference in accuracy
+		int batchSize = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Long seed = null;
+		String precision = "double";
+		for (int a = 0; a + 1 < args.length; a += 2) {
+			if (args[a].equals("-batch")) {
+				batchSize = Integer.parseInt(args[a + 1]);
+			} else if (args[a].equals("-threads")) {
+				threads = Integer.parseInt(args[a + 1]);
+			} else if (args[a].equals("-seed")) {
+				seed = Long.valueOf(args[a + 1]);
+			} else if (args[a].equals("-precision")) {
+				precision = args[a + 1];
+			}
+		}
+		if (!precision.equals("double") && !precision.equals("float") && !precision.equals("both")) {
+			System.out.println("Precision must be double, float or both.");
+			System.exit(0);
+		}
+		readDoubles = !precision.equals("float");
+		readFloats = !precision.equals("double");
+		if (readFloats && batchSize > 1) {
+			System.out.println("The float network trains per example; -batch and -threads only apply to the double one.");
+		}
+		// Both networks must start from the same weights to be compared.
+		if (readFloats && seed == null) {
+			seed = Long.valueOf(new Random().nextLong());
+		}
 		
 		try {
 			readData();
@@ -25,11 +66,32 @@ public class Training {
 			e.printStackTrace();
 		}
 
-		FeedForwardNetwork n = new FeedForwardNetwork(nRows*nCols, 100, 1, 10);
-		n.initNetwork(trainingDataSet, desiredOutput, 0.001, 1);
-		n.trainNetwork(200, true);
-		n.printWeights();
-		n.testNetworkBatch(10000, testingDataSet,desiredTestOutput,true);
+		double accuracy = 0;
+		if (readDoubles) {
+			FeedForwardNetwork n = new FeedForwardNetwork(nRows*nCols, 100, 1, 10);
+			if (seed == null) {
+				n.initNetwork(trainingDataSet, desiredOutput, 0.001, 1);
+			} else {
+				n.initNetwork(trainingDataSet, desiredOutput, 0.001, 1, seed.longValue());
+			}
+			System.out.println("Weights take " + n.getMemoryBytes() / 1024 + " KB");
+			System.out.println("Kernels: " + n.getKernels().name());
+			n.trainNetwork(200, batchSize, threads, seed != null, true);
+			n.printWeights();
+			accuracy = n.testNetworkBatch(10000, testingDataSet,desiredTestOutput,true);
+		}
+		if (readFloats) {
+			FloatFeedForwardNetwork f = new FloatFeedForwardNetwork(nRows*nCols, 100, 1, 10);
+			f.initNetwork(floatTrainingDataSet, desiredOutput, 0.001, 1, seed.longValue());
+			System.out.println("Float weights take " + f.getMemoryBytes() / 1024 + " KB");
+			System.out.println("Kernels: " + f.getKernels().name());
+			f.trainNetwork(200, true);
+			double floatAccuracy = f.testNetworkBatch(10000, floatTestingDataSet, desiredTestOutput, true);
+			if (readDoubles) {
+				System.out.println("Accuracy: double " + FeedForwardNetwork.round(accuracy, 4) + ", float " + FeedForwardNetwork.round(floatAccuracy, 4)
+						+ ", float - double " + FeedForwardNetwork.round(floatAccuracy - accuracy, 4));
+			}
+		}
 	}
 	
 	public static void readData() throws IOException{
@@ -52,7 +114,8 @@ public class Training {
         System.out.println("number of labels is: " + numberOfLabels);
         
         int pixelNum = nRows * nCols;
-        trainingDataSet = new double[numberOfItems][pixelNum];
+        trainingDataSet = readDoubles ? new double[numberOfItems][pixelNum] : null;
+        floatTrainingDataSet = readFloats ? new float[numberOfItems][pixelNum] : null;
         desiredOutput = new double[numberOfLabels][10];
         
         for(int i = 0; i < numberOfLabels; i++) {
@@ -61,7 +124,12 @@ public class Training {
             for (int r = 0; r < nRows; r++) {
                 for (int c = 0; c < nCols; c++) {
                     double num = dataInputStream.readUnsignedByte();
-                    trainingDataSet[i][r*nCols+c] = num/255; //standardize data
+                    if (readDoubles) {
+                        trainingDataSet[i][r*nCols+c] = num/255; //standardize data
+                    }
+                    if (readFloats) {
+                        floatTrainingDataSet[i][r*nCols+c] = (float) (num/255);
+                    }
                 }
             }
             
@@ -87,8 +155,9 @@ public class Training {
         System.out.println("number of labels is: " + numberOfTestLabels);
         
         pixelNum = nRows * nCols;
-        testingDataSet = new double[numberOfTestItems][pixelNum];
-        desiredTestOutput = new double[numberOfLabels][10];
+        testingDataSet = readDoubles ? new double[numberOfTestItems][pixelNum] : null;
+        floatTestingDataSet = readFloats ? new float[numberOfTestItems][pixelNum] : null;
+        desiredTestOutput = new double[numberOfTestLabels][10];
         
         for(int i = 0; i < numberOfTestLabels; i++) {
         	int read = testlabelInputStream.readUnsignedByte();
@@ -96,7 +165,12 @@ public class Training {
             for (int r = 0; r < nRows; r++) {
                 for (int c = 0; c < nCols; c++) {
                     double num = testDataInputStream.readUnsignedByte();
-                    testingDataSet[i][r*nCols+c] = num/255;
+                    if (readDoubles) {
+                        testingDataSet[i][r*nCols+c] = num/255;
+                    }
+                    if (readFloats) {
+                        floatTestingDataSet[i][r*nCols+c] = (float) (num/255);
+                    }
                 }
             }
             
@@ -0,0 +1,131 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * NetworkKernels on SIMD registers, with the Vector API: every loop works
+ * on as many doubles or floats at a time as the widest vector the CPU has
+ * (8 or 16 with AVX-512), and the few left over one at a time. Compared
+ * with the scalar loops, the dot products are summed in a different order
+ * and with fused multiply-adds, and the sigmoid uses the vector
+ * exponential, so results differ in the last bits.
+ *
+ * Needs Java 16 or later and the incubator module; see NetworkKernels for
+ * how to compile and run with it. Loading this class without the module
+ * fails, and NetworkKernels then uses the scalar loops.
+ */
+public class VectorKernels implements NetworkKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	@Override
+	public double dot(double[] a, int aFrom, double[] b, int bFrom, int n) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, a, aFrom + i);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, b, bFrom + i);
+			sum = x.fma(y, sum);
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			result += a[aFrom + i] * b[bFrom + i];
+		}
+		return result;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xFrom, double[] y, int yFrom, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector product = DoubleVector.fromArray(SPECIES, x, xFrom + i).mul(alpha);
+			product.add(DoubleVector.fromArray(SPECIES, y, yFrom + i)).intoArray(y, yFrom + i);
+		}
+		for (; i < n; i++) {
+			y[yFrom + i] += x[xFrom + i] * alpha;
+		}
+	}
+
+	@Override
+	public void sigmoid(double[] a, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector exp = DoubleVector.fromArray(SPECIES, a, i).neg().lanewise(VectorOperators.EXP);
+			DoubleVector.broadcast(SPECIES, 1.0).div(exp.add(1.0)).intoArray(a, i);
+		}
+		for (; i < n; i++) {
+			a[i] = 1.0 / (1 + Math.exp(-1.0 * a[i]));
+		}
+	}
+
+	/*
+	 * Each vector of floats is widened into two vectors of doubles, where the
+	 * products are exact and summed.
+	 */
+	@Override
+	public double dot(float[] a, int aFrom, float[] b, int bFrom, int n) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = FLOATS.loopBound(n); i < bound; i += FLOATS.length()) {
+			FloatVector x = FloatVector.fromArray(FLOATS, a, aFrom + i);
+			FloatVector y = FloatVector.fromArray(FLOATS, b, bFrom + i);
+			for (int part = 0; part < 2; part++) {
+				DoubleVector xd = (DoubleVector) x.convertShape(VectorOperators.F2D, SPECIES, part);
+				DoubleVector yd = (DoubleVector) y.convertShape(VectorOperators.F2D, SPECIES, part);
+				sum = xd.fma(yd, sum);
+			}
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			result += (double) a[aFrom + i] * b[bFrom + i];
+		}
+		return result;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xFrom, float[] y, int yFrom, int n) {
+		int i = 0;
+		for (int bound = FLOATS.loopBound(n); i < bound; i += FLOATS.length()) {
+			FloatVector product = FloatVector.fromArray(FLOATS, x, xFrom + i).mul(alpha);
+			product.add(FloatVector.fromArray(FLOATS, y, yFrom + i)).intoArray(y, yFrom + i);
+		}
+		for (; i < n; i++) {
+			y[yFrom + i] += x[xFrom + i] * alpha;
+		}
+	}
+
+	/* The products of two floats are exact in double, as in the scalar loop. */
+	@Override
+	public void axpy(float alpha, float[] x, int xFrom, double[] y, int yFrom, int n) {
+		int i = 0;
+		for (int bound = FLOATS.loopBound(n); i < bound; i += FLOATS.length()) {
+			FloatVector xf = FloatVector.fromArray(FLOATS, x, xFrom + i);
+			for (int part = 0; part < 2; part++) {
+				int at = yFrom + i + part * SPECIES.length();
+				DoubleVector product = ((DoubleVector) xf.convertShape(VectorOperators.F2D, SPECIES, part)).mul(alpha);
+				product.add(DoubleVector.fromArray(SPECIES, y, at)).intoArray(y, at);
+			}
+		}
+		for (; i < n; i++) {
+			y[yFrom + i] += (double) x[xFrom + i] * alpha;
+		}
+	}
+
+	@Override
+	public void sigmoid(float[] a, int n) {
+		int i = 0;
+		for (int bound = FLOATS.loopBound(n); i < bound; i += FLOATS.length()) {
+			FloatVector exp = FloatVector.fromArray(FLOATS, a, i).neg().lanewise(VectorOperators.EXP);
+			FloatVector.broadcast(FLOATS, 1.0f).div(exp.add(1.0f)).intoArray(a, i);
+		}
+		for (; i < n; i++) {
+			a[i] = (float) (1.0 / (1 + Math.exp(-1.0 * a[i])));
+		}
+	}
+
+	@Override
+	public String name() {
+		return "vector (" + SPECIES.length() + " doubles)";
+	}
+}
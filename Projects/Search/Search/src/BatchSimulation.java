@@ -0,0 +1,194 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs simulations headless, as fast as the CPU allows, for every map and
+ * algorithm, spread over all cores. The maps are the MapN.txt files in the
+ * working directory plus, with -seeds, synthetic maps made from seeds
+ * 1..n. For every run this records
+ * - the steps the simulation took and the targets left uncleared,
+ * - whether a path was found, its length and the states placed on open,
+ * - the wall time of the search and of the simulation.
+ * The runs are printed as CSV, and optionally written to a CSV and a JSON
+ * file, in the same order whatever the number of threads.
+ *
+ * Run from the project directory, e.g.
+ * java -cp bin BatchSimulation [-algorithms a,b] [-seeds n] [-size n] [-walls percent]
+ * [-steps n] [-threads n] [-csv file] [-json file]
+ */
+public class BatchSimulation {
+	public static final String[] ALGORITHMS = { "bfs", "astar", "astar101112", "astar141516", "greedy", "jps",
+			"hpa" };
+	private static final String HEADER = "map,seed,algorithm,rows,cols,steps,targetsLeft,pathFound,pathLength,"
+			+ "openCount,searchMs,simulationMs";
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		String[] algorithms = ALGORITHMS;
+		int seeds = 0;
+		int size = 100;
+		int walls = 20;
+		int steps = 200;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File csv = null;
+		File json = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-algorithms": algorithms = args[i + 1].split(","); break;
+			case "-seeds": seeds = Integer.parseInt(args[i + 1]); break;
+			case "-size": size = Integer.parseInt(args[i + 1]); break;
+			case "-walls": walls = Integer.parseInt(args[i + 1]); break;
+			case "-steps": steps = Integer.parseInt(args[i + 1]); break;
+			case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+			case "-csv": csv = new File(args[i + 1]); break;
+			case "-json": json = new File(args[i + 1]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		List<Scenario> scenarios = new ArrayList<>();
+		for (File file : SearchBenchmark.mapFiles(new File("."))) {
+			Position robotPos = new Position(0, 0);
+			Environment env = MapLoader.load(file, robotPos);
+			scenarios.add(new Scenario(file.getName(), -1, env, robotPos));
+		}
+		for (int seed = 1; seed <= seeds; seed++) {
+			Position robotPos = new Position(0, 0);
+			Environment env = new Environment(SearchBenchmark.syntheticMap(size, 8, walls, seed), robotPos);
+			scenarios.add(new Scenario("synthetic" + size, seed, env, robotPos));
+		}
+
+		long start = System.nanoTime();
+		List<Run> runs = runAll(scenarios, algorithms, steps, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(HEADER);
+		for (Run run : runs) {
+			System.out.println(run.toCsv());
+		}
+		System.out.printf("%d runs on %d threads in %.2f s%n", runs.size(), threads, seconds);
+		if (csv != null) {
+			writeCsv(runs, csv);
+		}
+		if (json != null) {
+			writeJson(runs, json);
+		}
+	}
+
+	/*
+	 * Runs every algorithm on every scenario on a pool of threads and returns
+	 * the runs ordered by scenario, then algorithm. Environments are only
+	 * read, so the runs of one scenario share it.
+	 */
+	public static List<Run> runAll(List<Scenario> scenarios, String[] algorithms, int steps, int threads)
+			throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Run>> futures = new ArrayList<>();
+			for (Scenario scenario : scenarios) {
+				for (String algorithm : algorithms) {
+					futures.add(pool.submit(() -> run(scenario, algorithm, steps)));
+				}
+			}
+			List<Run> runs = new ArrayList<>(futures.size());
+			for (Future<Run> future : futures) {
+				runs.add(future.get());
+			}
+			return runs;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public static Run run(Scenario scenario, String algorithm, int steps) {
+		Robot robot = new Robot(scenario.env, scenario.robotPos.row, scenario.robotPos.col);
+		long start = System.nanoTime();
+		SearchBenchmark.search(robot, algorithm);
+		long searched = System.nanoTime();
+		Simulation simulation = new Simulation(scenario.env, Collections.singletonList(robot), steps);
+		simulation.run();
+		long simulated = System.nanoTime();
+
+		Run run = new Run();
+		run.scenario = scenario;
+		run.algorithm = algorithm;
+		run.steps = simulation.getTimesteps();
+		run.targetsLeft = simulation.getTargetsLeft();
+		run.pathFound = robot.getPathFound();
+		run.pathLength = robot.getPathLength();
+		run.openCount = robot.getOpenCount();
+		run.searchMs = (searched - start) / 1e6;
+		run.simulationMs = (simulated - searched) / 1e6;
+		return run;
+	}
+
+	/* A map to simulate on; seed is -1 for maps read from a file. */
+	public static class Scenario {
+		final String name;
+		final long seed;
+		final Environment env;
+		final Position robotPos;
+
+		public Scenario(String name, long seed, Environment env, Position robotPos) {
+			this.name = name;
+			this.seed = seed;
+			this.env = env;
+			this.robotPos = robotPos;
+		}
+	}
+
+	public static class Run {
+		Scenario scenario;
+		String algorithm;
+		int steps;
+		int targetsLeft;
+		boolean pathFound;
+		int pathLength;
+		long openCount;
+		double searchMs;
+		double simulationMs;
+
+		String toCsv() {
+			return String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%d,%b,%d,%d,%.3f,%.3f", scenario.name,
+					scenario.seed < 0 ? "" : Long.toString(scenario.seed), algorithm, scenario.env.getRows(),
+					scenario.env.getCols(), steps, targetsLeft, pathFound, pathLength, openCount, searchMs,
+					simulationMs);
+		}
+
+		String toJson() {
+			return String.format(Locale.ROOT, "{\"map\": \"%s\", \"seed\": %s, \"algorithm\": \"%s\", \"rows\": %d, \"cols\": %d, "
+					+ "\"steps\": %d, \"targetsLeft\": %d, \"pathFound\": %b, \"pathLength\": %d, \"openCount\": %d, "
+					+ "\"searchMs\": %.3f, \"simulationMs\": %.3f}", scenario.name,
+					scenario.seed < 0 ? "null" : Long.toString(scenario.seed), algorithm, scenario.env.getRows(),
+					scenario.env.getCols(), steps, targetsLeft, pathFound, pathLength, openCount, searchMs,
+					simulationMs);
+		}
+	}
+
+	private static void writeCsv(List<Run> runs, File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println(HEADER);
+			for (Run run : runs) {
+				out.println(run.toCsv());
+			}
+		}
+	}
+
+	private static void writeJson(List<Run> runs, File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("[");
+			for (int i = 0; i < runs.size(); i++) {
+				out.println("  " + runs.get(i).toJson() + (i + 1 < runs.size() ? "," : ""));
+			}
+			out.println("]");
+		}
+	}
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Precomputed shortest-path distances to a set of known targets on a map whose
+ * walls never change. For every target the whole grid is flooded once and the
+ * distance of each cell to the target is kept, so afterwards the distance from
+ * any cell is a single lookup and a shortest path is found by stepping to a
+ * neighbor one move closer, in O(path length), without any search.
+ *
+ * Each target costs 4 bytes per cell. Targets are only added while they fit
+ * into the memory budget given at construction; the caller falls back to a
+ * regular search for the others.
+ *
+ * An oracle can be saved to disk and loaded again for the same map; loading
+ * checks the map's size and walls and refuses data built for another map.
+ */
+public class DistanceOracle {
+	public static final int UNREACHABLE = -1;
+	private static final int MAGIC = 0x44495354; // "DIST"
+
+	private final GridSearch search;
+	private final long memoryBudget;
+	private int[] targets;
+	private int[][] distances; // [target][cell]
+	private int targetCount;
+
+	public DistanceOracle(GridSearch search, long memoryBudget) {
+		this.search = search;
+		this.memoryBudget = memoryBudget;
+		this.targets = new int[4];
+		this.distances = new int[4][];
+		this.targetCount = 0;
+	}
+
+	/* Traditional Getters */
+	public int getTargetCount() { return targetCount; }
+	public long getMemoryBudget() { return memoryBudget; }
+
+	/* Bytes held by the distance tables. */
+	public long getMemoryBytes() {
+		return (long) targetCount * bytesPerTarget();
+	}
+
+	private long bytesPerTarget() {
+		return 4L * search.getRows() * search.getCols();
+	}
+
+	/**
+	 * Precomputes the distances to target.
+	 *
+	 * @return false if the target does not fit into the memory budget
+	 */
+	public boolean addTarget(int target) {
+		if (slotOf(target) >= 0) {
+			return true;
+		}
+		if (getMemoryBytes() + bytesPerTarget() > memoryBudget) {
+			return false;
+		}
+		int[] distance = new int[search.getRows() * search.getCols()];
+		search.distanceField(target, distance);
+		add(target, distance);
+		return true;
+	}
+
+	/**
+	 * Precomputes the distances to every target in the list.
+	 *
+	 * @return the number of targets that did not fit into the memory budget
+	 */
+	public int addTargets(LinkedList<Position> targets) {
+		int skipped = 0;
+		for (Position p : targets) {
+			if (!addTarget(search.index(p.row, p.col))) {
+				skipped++;
+			}
+		}
+		return skipped;
+	}
+
+	private void add(int target, int[] distance) {
+		if (targetCount == targets.length) {
+			int[] grownTargets = new int[targetCount * 2];
+			int[][] grownDistances = new int[targetCount * 2][];
+			System.arraycopy(targets, 0, grownTargets, 0, targetCount);
+			System.arraycopy(distances, 0, grownDistances, 0, targetCount);
+			targets = grownTargets;
+			distances = grownDistances;
+		}
+		targets[targetCount] = target;
+		distances[targetCount] = distance;
+		targetCount++;
+	}
+
+	private int slotOf(int target) {
+		for (int i = 0; i < targetCount; i++) {
+			if (targets[i] == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean hasTarget(int target) {
+		return slotOf(target) >= 0;
+	}
+
+	/* Returns true if every position in the list has been precomputed. */
+	public boolean covers(LinkedList<Position> targets) {
+		for (Position p : targets) {
+			if (!hasTarget(search.index(p.row, p.col))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Number of moves from cell to target, or UNREACHABLE. */
+	public int distance(int cell, int target) {
+		int slot = slotOf(target);
+		if (slot < 0) {
+			throw new IllegalArgumentException("Target not precomputed: " + target);
+		}
+		return distances[slot][cell];
+	}
+
+	/**
+	 * Returns the precomputed target closest to cell among those still marked
+	 * as targets in remaining, or -1 if none of them can be reached. Ties go to
+	 * the target that was added first.
+	 */
+	public int nearestTarget(int cell, GridSearch remaining) {
+		int best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < targetCount; i++) {
+			int d = distances[i][cell];
+			if (d >= 0 && d < bestDistance && remaining.isTarget(targets[i])) {
+				best = targets[i];
+				bestDistance = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Appends a shortest path from cell to target onto path and returns its
+	 * length, or UNREACHABLE if there is none. At every step the first move in
+	 * order that gets one move closer to the target is taken.
+	 */
+	public int tracePath(int cell, int target, LinkedList<Action> path, int[] order) {
+		int[] distance = distances[slotOf(target)];
+		int d = distance[cell];
+		if (d < 0) {
+			return UNREACHABLE;
+		}
+		Action[] actions = Action.values();
+		int length = d;
+		while (d > 0) {
+			int row = search.row(cell);
+			int col = search.col(cell);
+			for (int k = 0; k < order.length; k++) {
+				int next = search.neighbor(cell, row, col, order[k]);
+				if (next >= 0 && distance[next] == d - 1) {
+					path.add(actions[order[k]]);
+					cell = next;
+					break;
+				}
+			}
+			d--;
+		}
+		return length;
+	}
+
+	public void save(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(search.getRows());
+			out.writeInt(search.getCols());
+			out.writeLong(search.wallHash());
+			out.writeInt(targetCount);
+			for (int i = 0; i < targetCount; i++) {
+				out.writeInt(targets[i]);
+				for (int d : distances[i]) {
+					out.writeInt(d);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads an oracle saved for the map of search. Targets that do not fit
+	 * into the memory budget are skipped.
+	 *
+	 * @throws IOException if the file is not an oracle for this map
+	 */
+	public static DistanceOracle load(File file, GridSearch search, long memoryBudget) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a distance oracle: " + file);
+			}
+			if (in.readInt() != search.getRows() || in.readInt() != search.getCols()
+					|| in.readLong() != search.wallHash()) {
+				throw new IOException("Distance oracle was built for a different map: " + file);
+			}
+			DistanceOracle oracle = new DistanceOracle(search, memoryBudget);
+			int count = in.readInt();
+			int cells = search.getRows() * search.getCols();
+			for (int i = 0; i < count; i++) {
+				int target = in.readInt();
+				if (oracle.getMemoryBytes() + oracle.bytesPerTarget() > memoryBudget) {
+					for (long skip = 4L * cells; skip > 0;) {
+						int skipped = in.skipBytes((int) Math.min(skip, Integer.MAX_VALUE));
+						if (skipped <= 0) {
+							throw new IOException("Truncated distance oracle: " + file);
+						}
+						skip -= skipped;
+					}
+					continue;
+				}
+				int[] distance = new int[cells];
+				for (int cell = 0; cell < cells; cell++) {
+					distance[cell] = in.readInt();
+				}
+				oracle.add(target, distance);
+			}
+			return oracle;
+		}
+	}
+}
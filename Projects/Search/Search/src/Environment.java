@@ -11,33 +11,74 @@ import java.util.LinkedList;
  * @author Adam Gaweda, Michael Wollowski
  */
 public class Environment {
-	private Tile[][] tiles;
+	private PackedTiles packed;
+	private Tile[][] tiles; // built on the first call to getTiles()
 	private int rows, cols;
 	private LinkedList<Position> targets = new LinkedList<>();
 	
 	public Environment(LinkedList<String> map, Position robotPos) { // modify for multiple robots MIW
 		this.cols = map.get(0).length();
 		this.rows = map.size();
-		this.tiles = new Tile[rows][cols];
-		for (int row = 0; row < this.rows; row++) {
+		this.packed = new PackedTiles(rows, cols);
+		// Walk the rows in order; map.get(row) on a LinkedList would make this quadratic.
+		int row = 0;
+		for (String line : map) {
 			for (int col = 0; col < this.cols; col++) {
-				char tile = map.get(row).charAt(col);
+				char tile = line.charAt(col);
 				switch(tile) {
-				case 'R': tiles[row][col] = new Tile(TileStatus.CLEAN); robotPos.row = row; robotPos.col = col; break;
-				case 'D': tiles[row][col] = new Tile(TileStatus.DIRTY); break;
-				case 'C': tiles[row][col] = new Tile(TileStatus.CLEAN); break;
-				case 'W': tiles[row][col] = new Tile(TileStatus.IMPASSABLE); break;
-				case 'T': tiles[row][col] = new Tile(TileStatus.TARGET); targets.add(new Position(row, col)); break;
+				case 'R': packed.set(row, col, TileStatus.CLEAN); robotPos.row = row; robotPos.col = col; break;
+				case 'D': packed.set(row, col, TileStatus.DIRTY); break;
+				case 'C': packed.set(row, col, TileStatus.CLEAN); break;
+				case 'W': packed.set(row, col, TileStatus.IMPASSABLE); break;
+				case 'T': packed.set(row, col, TileStatus.TARGET); targets.add(new Position(row, col)); break;
 				}
 			}
+			row++;
+		}
+	}
+
+	/*
+	 * An environment over tiles that were already parsed, e.g. by MapLoader.
+	 * The targets are the TARGET tiles, in row-major order.
+	 */
+	public Environment(PackedTiles packed) {
+		this.packed = packed;
+		this.rows = packed.getRows();
+		this.cols = packed.getCols();
+		for (int word = 0; word < packed.getWordCount(); word++) {
+			for (long lanes = packed.targetLanes(word); lanes != 0; lanes &= lanes - 1) {
+				int cell = word * PackedTiles.CELLS_PER_WORD + Long.numberOfTrailingZeros(lanes) / 2;
+				targets.add(new Position(cell / cols, cell % cols));
+			}
 		}
 	}
 	
 	/* Traditional Getters and Setters */
-	public Tile[][] getTiles() { return tiles; }
+	public PackedTiles getPackedTiles() { return packed; }
 	public int getRows() { return this.rows; }
 	public int getCols() { return this.cols; }
 
+	/*
+	 * The tiles as objects, for code written against Tile[][]. The tiles are
+	 * kept packed, so the array is only built (once) when asked for; it does
+	 * not follow later changes to the packed tiles.
+	 */
+	public Tile[][] getTiles() {
+		if (tiles == null) {
+			Tile[] statuses = new Tile[TileStatus.values().length];
+			for (TileStatus status : TileStatus.values()) {
+				statuses[status.ordinal()] = new Tile(status);
+			}
+			tiles = new Tile[rows][cols];
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					tiles[row][col] = statuses[packed.get(row, col).ordinal()];
+				}
+			}
+		}
+		return tiles;
+	}
+
 	@SuppressWarnings("unchecked")
 	public LinkedList<Position> getTargets(){
 		return (LinkedList<Position>) this.targets.clone();
@@ -48,20 +89,13 @@ public class Environment {
 	 */
 	public TileStatus getTileStatus(int row, int col) {
 		if (row < 0 || row >= rows || col < 0 || col >= cols) return TileStatus.IMPASSABLE; 
-		else return tiles[row][col].getStatus();
+		else return packed.get(row, col);
 	}
 
 	/* Counts number of tiles that are not walls */
 	public int getNumTiles() {
-		int count = 0;
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                if (this.tiles[row][col].getStatus() != TileStatus.IMPASSABLE)
-                    count++;
-            }
-        }
-        return count;
-    }
+		return packed.countPassable();
+	}
 
 	/* Determines if a particular [row][col] coordinate is within
 	 * the boundaries of the environment. This is a rudimentary
@@ -70,7 +104,7 @@ public class Environment {
 	 */
 	public boolean validPos(int row, int col) {
 	    return row >= 0 && row < rows && col >= 0 && col < cols &&
-	    		tiles[row][col].getStatus() != TileStatus.IMPASSABLE;
+	    		packed.isPassable(row * cols + col);
 	}
 
 }
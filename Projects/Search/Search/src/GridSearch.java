@@ -0,0 +1,570 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * A reusable search engine over the static walls of an Environment. Cells are
+ * encoded as an int index (row * cols + col) and every piece of per-search
+ * state lives in flat primitive arrays that are allocated once per map, so
+ * searching for many targets in a row does not create garbage.
+ *
+ * Visited flags are generation-stamped: a cell counts as visited only if its
+ * stamp equals the current generation, so starting a new search is a single
+ * increment instead of clearing the arrays.
+ *
+ * Moves are stored as Action ordinals. The neighbor order of each search is
+ * given as an array of move codes so the callers can reproduce the expansion
+ * order (and therefore the paths and open counts) of the original searches.
+ */
+public class GridSearch {
+	public static final int RIGHT = Action.MOVE_RIGHT.ordinal();
+	public static final int LEFT = Action.MOVE_LEFT.ordinal();
+	public static final int UP = Action.MOVE_UP.ordinal();
+	public static final int DOWN = Action.MOVE_DOWN.ordinal();
+	public static final int NONE = Action.DO_NOTHING.ordinal();
+
+	/* The neighbor order used by Robot.bfs() and Robot.astar() */
+	public static final int[] ORDER_RLDU = { RIGHT, LEFT, DOWN, UP };
+	/* The neighbor order used by Robot.astar101112() and Robot.astar141516() */
+	public static final int[] ORDER_DLRU = { DOWN, LEFT, RIGHT, UP };
+
+	private static final Action[] ACTIONS = Action.values();
+
+	private final int rows;
+	private final int cols;
+	private final boolean[] passable;
+	private final boolean[] target;
+	private int targetCount;
+
+	private final int[] stamp;
+	private int generation;
+	private final byte[] moves;
+	private final int[] queue;
+	private final int queueMask;
+	private final byte[] trace;
+	private long openCount;
+
+	// Only needed by the best-first searches, so they are built on first use.
+	private IndexedMinHeap open;
+	private int[] gScore;
+	private int[] parent; // jump point search only
+
+	public GridSearch(Environment env) {
+		this.rows = env.getRows();
+		this.cols = env.getCols();
+		int cells = rows * cols;
+		this.passable = new boolean[cells];
+		env.getPackedTiles().copyPassable(passable);
+		this.target = new boolean[cells];
+		this.stamp = new int[cells];
+		this.generation = 0;
+		this.moves = new byte[cells];
+		int capacity = Integer.highestOneBit(Math.max(cells, 1));
+		if (capacity < cells) {
+			capacity <<= 1;
+		}
+		this.queue = new int[capacity];
+		this.queueMask = capacity - 1;
+		this.trace = new byte[cells];
+	}
+
+	/* Traditional Getters */
+	public int getRows() { return rows; }
+	public int getCols() { return cols; }
+	public long getOpenCount() { return openCount; }
+	public int getTargetCount() { return targetCount; }
+
+	public void resetOpenCount() {
+		this.openCount = 0;
+	}
+
+	public void incOpenCount() {
+		this.openCount++;
+	}
+
+	public int index(int row, int col) {
+		return row * cols + col;
+	}
+
+	public int row(int cell) {
+		return cell / cols;
+	}
+
+	public int col(int cell) {
+		return cell % cols;
+	}
+
+	public boolean isPassable(int cell) {
+		return passable[cell];
+	}
+
+	/*
+	 * Opens or walls off a cell after the engine was built, e.g. when an
+	 * obstacle appears. Data precomputed from the old walls (a DistanceOracle)
+	 * is not updated.
+	 */
+	public void setPassable(int cell, boolean passable) {
+		this.passable[cell] = passable;
+	}
+
+	public boolean isTarget(int cell) {
+		return target[cell];
+	}
+
+	/* Replaces the current target set with the given positions. */
+	public void setTargets(LinkedList<Position> targets) {
+		Arrays.fill(target, false);
+		targetCount = 0;
+		for (Position p : targets) {
+			addTarget(index(p.row, p.col));
+		}
+	}
+
+	public void addTarget(int cell) {
+		if (!target[cell]) {
+			target[cell] = true;
+			targetCount++;
+		}
+	}
+
+	public void removeTarget(int cell) {
+		if (target[cell]) {
+			target[cell] = false;
+			targetCount--;
+		}
+	}
+
+	/*
+	 * Starts a new search: every cell becomes unvisited. On the (very rare)
+	 * wrap-around of the generation counter the stamps are cleared once.
+	 */
+	protected int nextGeneration() {
+		generation++;
+		if (generation == 0) {
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		return generation;
+	}
+
+	protected boolean visited(int cell, int gen) {
+		return stamp[cell] == gen;
+	}
+
+	protected void visit(int cell, int gen, int move) {
+		stamp[cell] = gen;
+		moves[cell] = (byte) move;
+	}
+
+	/*
+	 * Returns the cell reached by taking move from cell, or -1 if that cell is
+	 * outside the grid or a wall.
+	 */
+	public int neighbor(int cell, int row, int col, int move) {
+		int next;
+		if (move == RIGHT) {
+			if (col + 1 >= cols) return -1;
+			next = cell + 1;
+		} else if (move == LEFT) {
+			if (col == 0) return -1;
+			next = cell - 1;
+		} else if (move == DOWN) {
+			if (row + 1 >= rows) return -1;
+			next = cell + cols;
+		} else {
+			if (row == 0) return -1;
+			next = cell - cols;
+		}
+		return passable[next] ? next : -1;
+	}
+
+	/* Returns the cell the move into cell was taken from. */
+	private int previous(int cell, int move) {
+		if (move == RIGHT) return cell - 1;
+		if (move == LEFT) return cell + 1;
+		if (move == DOWN) return cell - cols;
+		return cell + cols;
+	}
+
+	/**
+	 * Breadth-first search from start to the nearest target. A target is
+	 * accepted as soon as it is discovered, without being placed on the queue,
+	 * which matches the original Robot.bfs(). Every cell placed on the queue
+	 * increases the open count, except start: the caller already placed it on
+	 * open when it was reached by the previous search.
+	 *
+	 * @return the target cell that was reached, or -1 if no target is reachable
+	 */
+	public int bfs(int start, int[] order) {
+		int gen = nextGeneration();
+		int head = 0;
+		int tail = 0;
+		visit(start, gen, NONE);
+		queue[tail++ & queueMask] = start;
+		while (head != tail) {
+			int current = queue[head++ & queueMask];
+			int row = current / cols;
+			int col = current - row * cols;
+			for (int k = 0; k < order.length; k++) {
+				int next = neighbor(current, row, col, order[k]);
+				if (next < 0 || stamp[next] == gen) {
+					continue;
+				}
+				visit(next, gen, order[k]);
+				if (target[next]) {
+					return next;
+				}
+				openCount++;
+				queue[tail++ & queueMask] = next;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Floods the grid from source and stores the number of moves from source
+	 * to every cell in distance, or -1 for cells that cannot be reached. As
+	 * moves are reversible, this is also the distance from every cell to
+	 * source. Does not count towards the open count.
+	 */
+	public void distanceField(int source, int[] distance) {
+		Arrays.fill(distance, -1);
+		int head = 0;
+		int tail = 0;
+		distance[source] = 0;
+		queue[tail++ & queueMask] = source;
+		while (head != tail) {
+			int current = queue[head++ & queueMask];
+			int row = current / cols;
+			int col = current - row * cols;
+			int d = distance[current] + 1;
+			for (int move = 0; move < NONE; move++) {
+				int next = neighbor(current, row, col, move);
+				if (next >= 0 && distance[next] < 0) {
+					distance[next] = d;
+					queue[tail++ & queueMask] = next;
+				}
+			}
+		}
+	}
+
+	/*
+	 * A fingerprint of the grid's size and walls, used to tell whether data
+	 * precomputed for a map still matches it.
+	 */
+	public long wallHash() {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ rows) * 0x100000001b3L;
+		hash = (hash ^ cols) * 0x100000001b3L;
+		for (int cell = 0; cell < passable.length; cell++) {
+			hash = (hash ^ (passable[cell] ? 1 : 0)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/* Manhattan distance between two cells, the same as Robot.getDistance(). */
+	public int getDistance(int cell, int goal) {
+		int row = cell / cols;
+		int goalRow = goal / cols;
+		return Math.abs(row - goalRow) + Math.abs((cell - row * cols) - (goal - goalRow * cols));
+	}
+
+	private IndexedMinHeap getOpen() {
+		if (open == null) {
+			open = new IndexedMinHeap(passable.length);
+			gScore = new int[passable.length];
+		}
+		open.clear();
+		return open;
+	}
+
+	/**
+	 * A* search from start to goal with the Manhattan heuristic. g and h are
+	 * computed once per node and f = g + h is kept as the node's key in an
+	 * indexed binary heap; a shorter path to a node that is still open lowers
+	 * its key in place rather than adding a duplicate entry. The goal is
+	 * accepted when it is removed from open. As with bfs, start is not counted
+	 * on open.
+	 *
+	 * @return true if goal was reached
+	 */
+	public boolean astar(int start, int goal, int[] order) {
+		int gen = nextGeneration();
+		IndexedMinHeap open = getOpen();
+		visit(start, gen, NONE);
+		gScore[start] = 0;
+		open.add(start, getDistance(start, goal));
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (current == goal) {
+				return true;
+			}
+			int row = current / cols;
+			int col = current - row * cols;
+			int g = gScore[current] + 1;
+			for (int k = 0; k < order.length; k++) {
+				int next = neighbor(current, row, col, order[k]);
+				if (next < 0) {
+					continue;
+				}
+				if (stamp[next] != gen) {
+					visit(next, gen, order[k]);
+					gScore[next] = g;
+					openCount++;
+					open.add(next, g + getDistance(next, goal));
+				} else if (g < gScore[next] && open.contains(next)) {
+					moves[next] = (byte) order[k];
+					open.decreaseKey(next, open.getKey(next) - (gScore[next] - g));
+					gScore[next] = g;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A* search from start to whichever target is reached first, ordered by
+	 * g plus the given heuristic. The heuristic is evaluated once per cell,
+	 * when the cell is placed on open, and cached in the cell's key. Targets
+	 * are accepted when they are removed from open; start is not counted on
+	 * open.
+	 *
+	 * @return the target cell that was reached, or -1 if no target is reachable
+	 */
+	public int astar(int start, TargetHeuristic heuristic, int[] order) {
+		int gen = nextGeneration();
+		IndexedMinHeap open = getOpen();
+		visit(start, gen, NONE);
+		gScore[start] = 0;
+		open.add(start, heuristic.estimate(start));
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (target[current] && current != start) {
+				return current;
+			}
+			int row = current / cols;
+			int col = current - row * cols;
+			int g = gScore[current] + 1;
+			for (int k = 0; k < order.length; k++) {
+				int next = neighbor(current, row, col, order[k]);
+				if (next < 0) {
+					continue;
+				}
+				if (stamp[next] != gen) {
+					visit(next, gen, order[k]);
+					gScore[next] = g;
+					openCount++;
+					open.add(next, g + heuristic.estimate(next));
+				} else if (g < gScore[next] && open.contains(next)) {
+					moves[next] = (byte) order[k];
+					open.decreaseKey(next, open.getKey(next) - (gScore[next] - g));
+					gScore[next] = g;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Greedy best-first search from start to whichever target is reached
+	 * first, ordered by the heuristic alone. Cells are closed when they are
+	 * first placed on open and never revisited, so the path is not necessarily
+	 * the shortest, but far fewer cells are usually opened than by A*.
+	 * Targets are accepted when they are removed from open; start is not
+	 * counted on open.
+	 *
+	 * @return the target cell that was reached, or -1 if no target is reachable
+	 */
+	public int greedy(int start, TargetHeuristic heuristic, int[] order) {
+		int gen = nextGeneration();
+		IndexedMinHeap open = getOpen();
+		visit(start, gen, NONE);
+		open.add(start, heuristic.estimate(start));
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (target[current] && current != start) {
+				return current;
+			}
+			int row = current / cols;
+			int col = current - row * cols;
+			for (int k = 0; k < order.length; k++) {
+				int next = neighbor(current, row, col, order[k]);
+				if (next < 0 || stamp[next] == gen) {
+					continue;
+				}
+				visit(next, gen, order[k]);
+				openCount++;
+				open.add(next, heuristic.estimate(next));
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Jump point search from start to goal, adapted to 4-connected grids with
+	 * uniform costs. Paths are taken in a canonical order, horizontal moves
+	 * before vertical ones: a horizontal jump stops where a vertical scan
+	 * from it would find the goal or a forced neighbor, a vertical jump only
+	 * stops at the goal or at a forced neighbor (an opening to the side that
+	 * was a wall one step back). Only those jump points are placed on open,
+	 * which in open rooms is a small fraction of the cells A* opens, and the
+	 * path is as short as the one found by astar(). As with astar, start is
+	 * not counted on open; use traceJumpPath to recover the path.
+	 *
+	 * @return true if goal was reached
+	 */
+	public boolean jps(int start, int goal) {
+		int gen = nextGeneration();
+		IndexedMinHeap open = getOpen();
+		if (parent == null) {
+			parent = new int[passable.length];
+		}
+		visit(start, gen, NONE);
+		gScore[start] = 0;
+		parent[start] = start;
+		open.add(start, getDistance(start, goal));
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (current == goal) {
+				return true;
+			}
+			int row = current / cols;
+			int col = current - row * cols;
+			int arrived = moves[current];
+			for (int move = 0; move < NONE; move++) {
+				if (!successor(current, row, col, arrived, move)) {
+					continue;
+				}
+				int next = (move == LEFT || move == RIGHT) ? jumpHorizontal(current, row, col, move, goal)
+						: jumpVertical(current, row, col, move, goal);
+				if (next < 0) {
+					continue;
+				}
+				int g = gScore[current] + getDistance(current, next);
+				if (stamp[next] != gen) {
+					visit(next, gen, move);
+					gScore[next] = g;
+					parent[next] = current;
+					openCount++;
+					open.add(next, g + getDistance(next, goal));
+				} else if (g < gScore[next] && open.contains(next)) {
+					moves[next] = (byte) move;
+					parent[next] = current;
+					open.decreaseKey(next, open.getKey(next) - (gScore[next] - g));
+					gScore[next] = g;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Pruning rules: the start expands in every direction. A jump point
+	 * reached horizontally continues horizontally and turns vertically; one
+	 * reached vertically only continues, or turns towards a forced neighbor.
+	 */
+	private boolean successor(int cell, int row, int col, int arrived, int move) {
+		if (arrived == NONE) {
+			return true;
+		}
+		if (arrived == LEFT || arrived == RIGHT) {
+			return move != (arrived == LEFT ? RIGHT : LEFT);
+		}
+		if (move == arrived) {
+			return true;
+		}
+		if (move == UP || move == DOWN) {
+			return false;
+		}
+		return forcedSide(cell, row, col, arrived == DOWN ? -cols : cols, move);
+	}
+
+	/*
+	 * True if the cell beside cell (in direction side, LEFT or RIGHT) is open
+	 * while the cell beside the previous cell of a vertical move is a wall.
+	 */
+	private boolean forcedSide(int cell, int row, int col, int back, int side) {
+		int dx = side == RIGHT ? 1 : -1;
+		if (side == RIGHT ? col + 1 >= cols : col == 0) {
+			return false;
+		}
+		int behind = cell + back;
+		return passable[cell + dx] && behind >= 0 && behind < passable.length && !passable[behind + dx];
+	}
+
+	/* Same as forcedSide for a horizontal move and a vertical side. */
+	private boolean forcedVertical(int cell, int row, int back, int side) {
+		int dy = side == DOWN ? cols : -cols;
+		if (side == DOWN ? row + 1 >= rows : row == 0) {
+			return false;
+		}
+		return passable[cell + dy] && !passable[cell + back + dy];
+	}
+
+	private int jumpVertical(int cell, int row, int col, int move, int goal) {
+		int back = move == DOWN ? -cols : cols;
+		while (true) {
+			cell = neighbor(cell, row, col, move);
+			if (cell < 0) {
+				return -1;
+			}
+			row += move == DOWN ? 1 : -1;
+			if (cell == goal || forcedSide(cell, row, col, back, LEFT) || forcedSide(cell, row, col, back, RIGHT)) {
+				return cell;
+			}
+		}
+	}
+
+	private int jumpHorizontal(int cell, int row, int col, int move, int goal) {
+		int back = move == RIGHT ? -1 : 1;
+		while (true) {
+			cell = neighbor(cell, row, col, move);
+			if (cell < 0) {
+				return -1;
+			}
+			col += move == RIGHT ? 1 : -1;
+			if (cell == goal || forcedVertical(cell, row, back, UP) || forcedVertical(cell, row, back, DOWN)
+					|| jumpVertical(cell, row, col, UP, goal) >= 0 || jumpVertical(cell, row, col, DOWN, goal) >= 0) {
+				return cell;
+			}
+		}
+	}
+
+	/**
+	 * Appends the moves leading from the start of the last jps() to goal onto
+	 * path and returns the number of moves appended. Jump points are joined by
+	 * straight runs of the move they were reached with.
+	 */
+	public int traceJumpPath(int goal, LinkedList<Action> path) {
+		int length = 0;
+		int cell = goal;
+		while (parent[cell] != cell) {
+			int steps = getDistance(parent[cell], cell);
+			for (int i = 0; i < steps; i++) {
+				trace[length++] = moves[cell];
+			}
+			cell = parent[cell];
+		}
+		for (int i = length - 1; i >= 0; i--) {
+			path.add(ACTIONS[trace[i]]);
+		}
+		return length;
+	}
+
+	/**
+	 * Appends the moves leading from the start of the last search to goal onto
+	 * path and returns the number of moves appended.
+	 */
+	public int tracePath(int goal, LinkedList<Action> path) {
+		int length = 0;
+		int cell = goal;
+		while (moves[cell] != NONE) {
+			int move = moves[cell];
+			trace[length++] = (byte) move;
+			cell = previous(cell, move);
+		}
+		for (int i = length - 1; i >= 0; i--) {
+			path.add(ACTIONS[trace[i]]);
+		}
+		return length;
+	}
+}
@@ -0,0 +1,511 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Hierarchical path planning (HPA*) for large grids. The grid is cut into
+ * square clusters. Wherever two neighboring clusters share an open stretch of
+ * border, one or two entrances are placed on it (one in the middle of short
+ * stretches, one at each end of long ones), giving a pair of abstract nodes,
+ * one on each side, joined by a single move. Within a cluster, the distances
+ * between its abstract nodes are precomputed by a search confined to the
+ * cluster.
+ *
+ * A query links start and goal to the abstract nodes of their clusters,
+ * searches the small abstract graph with A*, and then refines each abstract
+ * edge into moves with a search inside one cluster. Paths are usually within
+ * a few percent of the shortest, but are not guaranteed to be the shortest.
+ *
+ * When a cell becomes a wall (or open again), only the borders it lies on
+ * and the clusters next to them are recomputed, see setPassable.
+ */
+public class HierarchicalPlanner {
+	private static final int INFINITE = Integer.MAX_VALUE;
+	/* Open border stretches at least this long get an entrance at each end. */
+	private static final int LONG_ENTRANCE = 6;
+
+	private final GridSearch search;
+	private final int rows;
+	private final int cols;
+	private final int clusterSize;
+	private final int clusterRows;
+	private final int clusterCols;
+
+	// Abstract nodes, by id. Ids of removed nodes are reused.
+	private int[] nodeCell = new int[0];
+	private int[] nodeCluster = new int[0];
+	private int[] nodeSlot = new int[0]; // index in its cluster's node list
+	private int[] nodePartner = new int[0];
+	private int[] nodeBorder = new int[0];
+	private int[] freeNodes = new int[0];
+	private int freeCount;
+	private int nodeLimit;
+
+	// Per cluster: its abstract nodes and their pairwise distances.
+	private final int[][] clusterNodes;
+	private final int[] clusterNodeCount;
+	private final int[][] intra; // [cluster][i * count + j]
+
+	// Scratch space for searches inside one cluster.
+	private final int[] localDist;
+	private final byte[] localMove;
+	private final int[] localQueue;
+
+	// Scratch space for the abstract search.
+	private int[] stamp = new int[0];
+	private int[] gScore = new int[0];
+	private int[] parentNode = new int[0];
+	private int generation;
+	private IndexedMinHeap open;
+	private long openCount;
+
+	public HierarchicalPlanner(GridSearch search, int clusterSize) {
+		this.search = search;
+		this.rows = search.getRows();
+		this.cols = search.getCols();
+		this.clusterSize = clusterSize;
+		this.clusterRows = (rows + clusterSize - 1) / clusterSize;
+		this.clusterCols = (cols + clusterSize - 1) / clusterSize;
+		int clusters = clusterRows * clusterCols;
+		this.clusterNodes = new int[clusters][];
+		this.clusterNodeCount = new int[clusters];
+		this.intra = new int[clusters][];
+		this.localDist = new int[clusterSize * clusterSize];
+		this.localMove = new byte[clusterSize * clusterSize];
+		this.localQueue = new int[clusterSize * clusterSize];
+		for (int c = 0; c < clusters; c++) {
+			clusterNodes[c] = new int[4];
+		}
+		for (int c = 0; c < clusters; c++) {
+			buildBorder(2 * c);
+			buildBorder(2 * c + 1);
+		}
+		for (int c = 0; c < clusters; c++) {
+			buildIntra(c);
+		}
+	}
+
+	/* Traditional Getters */
+	public GridSearch getSearch() { return search; }
+	public int getClusterSize() { return clusterSize; }
+	public long getOpenCount() { return openCount; }
+	public void resetOpenCount() { this.openCount = 0; }
+
+	/* Number of abstract nodes currently in the graph. */
+	public int getNodeCount() {
+		return nodeLimit - freeCount;
+	}
+
+	private int clusterOf(int row, int col) {
+		return (row / clusterSize) * clusterCols + col / clusterSize;
+	}
+
+	private int firstRow(int cluster) {
+		return (cluster / clusterCols) * clusterSize;
+	}
+
+	private int firstCol(int cluster) {
+		return (cluster % clusterCols) * clusterSize;
+	}
+
+	private int lastRow(int cluster) {
+		return Math.min(rows, firstRow(cluster) + clusterSize) - 1;
+	}
+
+	private int lastCol(int cluster) {
+		return Math.min(cols, firstCol(cluster) + clusterSize) - 1;
+	}
+
+	/*
+	 * Border 2c is the right edge of cluster c, border 2c + 1 its bottom
+	 * edge. Places the entrances of one border; borders on the edge of the
+	 * map have none.
+	 */
+	private void buildBorder(int border) {
+		int c = border / 2;
+		boolean right = border % 2 == 0;
+		int other;
+		int length;
+		if (right) {
+			if (c % clusterCols == clusterCols - 1) {
+				return;
+			}
+			other = c + 1;
+			length = lastRow(c) - firstRow(c) + 1;
+		} else {
+			if (c / clusterCols == clusterRows - 1) {
+				return;
+			}
+			other = c + clusterCols;
+			length = lastCol(c) - firstCol(c) + 1;
+		}
+		int runStart = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean open = i < length && search.isPassable(borderCell(c, right, i))
+					&& search.isPassable(borderCell(c, right, i) + (right ? 1 : cols));
+			if (open && runStart < 0) {
+				runStart = i;
+			} else if (!open && runStart >= 0) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+					addEntrance(c, other, borderCell(c, right, runStart), right, border);
+					addEntrance(c, other, borderCell(c, right, runEnd), right, border);
+				} else {
+					addEntrance(c, other, borderCell(c, right, (runStart + runEnd) / 2), right, border);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	/* The i-th cell of cluster c along its right or bottom edge. */
+	private int borderCell(int c, boolean right, int i) {
+		if (right) {
+			return search.index(firstRow(c) + i, lastCol(c));
+		}
+		return search.index(lastRow(c), firstCol(c) + i);
+	}
+
+	private void addEntrance(int c, int other, int cell, boolean right, int border) {
+		int a = addNode(c, cell, border);
+		int b = addNode(other, cell + (right ? 1 : cols), border);
+		nodePartner[a] = b;
+		nodePartner[b] = a;
+	}
+
+	private int addNode(int cluster, int cell, int border) {
+		int id;
+		if (freeCount > 0) {
+			id = freeNodes[--freeCount];
+		} else {
+			id = nodeLimit++;
+			if (id == nodeCell.length) {
+				growNodes(Math.max(16, 2 * id));
+			}
+		}
+		nodeCell[id] = cell;
+		nodeCluster[id] = cluster;
+		nodeBorder[id] = border;
+		int count = clusterNodeCount[cluster];
+		if (count == clusterNodes[cluster].length) {
+			int[] grown = new int[2 * count];
+			System.arraycopy(clusterNodes[cluster], 0, grown, 0, count);
+			clusterNodes[cluster] = grown;
+		}
+		clusterNodes[cluster][count] = id;
+		nodeSlot[id] = count;
+		clusterNodeCount[cluster] = count + 1;
+		return id;
+	}
+
+	private void growNodes(int capacity) {
+		nodeCell = grow(nodeCell, capacity);
+		nodeCluster = grow(nodeCluster, capacity);
+		nodeSlot = grow(nodeSlot, capacity);
+		nodePartner = grow(nodePartner, capacity);
+		nodeBorder = grow(nodeBorder, capacity);
+		freeNodes = grow(freeNodes, capacity);
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/* Removes the nodes of a border from both clusters next to it. */
+	private void removeBorder(int border, int cluster) {
+		int[] nodes = clusterNodes[cluster];
+		int kept = 0;
+		for (int i = 0; i < clusterNodeCount[cluster]; i++) {
+			int id = nodes[i];
+			if (nodeBorder[id] == border) {
+				freeNodes[freeCount++] = id;
+			} else {
+				nodes[kept] = id;
+				nodeSlot[id] = kept;
+				kept++;
+			}
+		}
+		clusterNodeCount[cluster] = kept;
+	}
+
+	private void buildIntra(int c) {
+		int count = clusterNodeCount[c];
+		int[] distances = new int[count * count];
+		for (int i = 0; i < count; i++) {
+			localSearch(nodeCell[clusterNodes[c][i]], c);
+			for (int j = 0; j < count; j++) {
+				distances[i * count + j] = localDist[local(nodeCell[clusterNodes[c][j]], c)];
+			}
+		}
+		intra[c] = distances;
+	}
+
+	private int local(int cell, int c) {
+		int row = search.row(cell);
+		int col = search.col(cell);
+		return (row - firstRow(c)) * clusterSize + (col - firstCol(c));
+	}
+
+	/*
+	 * Breadth-first search from source that never leaves cluster c. Fills
+	 * localDist (-1 for unreachable cells) and localMove for the cluster.
+	 */
+	private void localSearch(int source, int c) {
+		int r0 = firstRow(c);
+		int c0 = firstCol(c);
+		int r1 = lastRow(c);
+		int c1 = lastCol(c);
+		for (int i = 0; i < localDist.length; i++) {
+			localDist[i] = -1;
+		}
+		int head = 0;
+		int tail = 0;
+		int start = local(source, c);
+		localDist[start] = 0;
+		localMove[start] = (byte) GridSearch.NONE;
+		localQueue[tail++] = source;
+		while (head < tail) {
+			int current = localQueue[head++];
+			int row = search.row(current);
+			int col = current - row * cols;
+			int d = localDist[local(current, c)] + 1;
+			for (int move = 0; move < GridSearch.NONE; move++) {
+				int next = search.neighbor(current, row, col, move);
+				if (next < 0) {
+					continue;
+				}
+				int nextRow = search.row(next);
+				int nextCol = next - nextRow * cols;
+				if (nextRow < r0 || nextRow > r1 || nextCol < c0 || nextCol > c1) {
+					continue;
+				}
+				int l = local(next, c);
+				if (localDist[l] < 0) {
+					localDist[l] = d;
+					localMove[l] = (byte) move;
+					localQueue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Walls off (passable false) or opens a cell. The borders the cell lies
+	 * on are re-scanned for entrances and the abstract distances of the
+	 * clusters next to them are recomputed; the rest of the graph is kept.
+	 */
+	public void setPassable(int row, int col, boolean passable) {
+		int cell = search.index(row, col);
+		if (search.isPassable(cell) == passable) {
+			return;
+		}
+		search.setPassable(cell, passable);
+		int c = clusterOf(row, col);
+		int left = col == firstCol(c) && c % clusterCols > 0 ? c - 1 : -1;
+		int up = row == firstRow(c) && c / clusterCols > 0 ? c - clusterCols : -1;
+		boolean onRight = col == lastCol(c) && c % clusterCols < clusterCols - 1;
+		boolean onBottom = row == lastRow(c) && c / clusterCols < clusterRows - 1;
+		if (onRight) {
+			rebuildBorder(2 * c, c, c + 1);
+		}
+		if (onBottom) {
+			rebuildBorder(2 * c + 1, c, c + clusterCols);
+		}
+		if (left >= 0) {
+			rebuildBorder(2 * left, left, c);
+			buildIntra(left);
+		}
+		if (up >= 0) {
+			rebuildBorder(2 * up + 1, up, c);
+			buildIntra(up);
+		}
+		if (onRight) {
+			buildIntra(c + 1);
+		}
+		if (onBottom) {
+			buildIntra(c + clusterCols);
+		}
+		buildIntra(c);
+	}
+
+	private void rebuildBorder(int border, int c, int other) {
+		removeBorder(border, c);
+		removeBorder(border, other);
+		buildBorder(border);
+	}
+
+	private void ensureSearchCapacity() {
+		int needed = nodeLimit + 2;
+		if (stamp.length < needed) {
+			int capacity = Math.max(needed, 2 * stamp.length);
+			stamp = new int[capacity];
+			gScore = new int[capacity];
+			parentNode = new int[capacity];
+			open = new IndexedMinHeap(capacity);
+			generation = 0;
+		}
+		open.clear();
+	}
+
+	/**
+	 * Plans a path from start to goal and appends its moves onto path. Every
+	 * abstract node placed on open increases the open count.
+	 *
+	 * @return the number of moves appended, or -1 if goal cannot be reached
+	 */
+	public int plan(int start, int goal, LinkedList<Action> path) {
+		if (start == goal) {
+			return 0;
+		}
+		ensureSearchCapacity();
+		int startCluster = clusterOf(search.row(start), search.col(start));
+		int goalCluster = clusterOf(search.row(goal), search.col(goal));
+		int startNode = nodeLimit;
+		int goalNode = nodeLimit + 1;
+
+		localSearch(goal, goalCluster);
+		int[] goalDist = new int[clusterNodeCount[goalCluster]];
+		for (int i = 0; i < goalDist.length; i++) {
+			goalDist[i] = localDist[local(nodeCell[clusterNodes[goalCluster][i]], goalCluster)];
+		}
+		localSearch(start, startCluster);
+		int direct = startCluster == goalCluster ? localDist[local(goal, startCluster)] : -1;
+		int[] startDist = new int[clusterNodeCount[startCluster]];
+		for (int i = 0; i < startDist.length; i++) {
+			startDist[i] = localDist[local(nodeCell[clusterNodes[startCluster][i]], startCluster)];
+		}
+
+		generation++;
+		if (generation == 0) {
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		int gen = generation;
+		stamp[startNode] = gen;
+		gScore[startNode] = 0;
+		parentNode[startNode] = -1;
+		open.add(startNode, search.getDistance(start, goal));
+		boolean found = false;
+		while (!open.isEmpty()) {
+			int u = open.poll();
+			if (u == goalNode) {
+				found = true;
+				break;
+			}
+			if (u == startNode) {
+				for (int i = 0; i < startDist.length; i++) {
+					relax(u, clusterNodes[startCluster][i], startDist[i], goal, gen);
+				}
+				if (direct >= 0) {
+					relax(u, goalNode, direct, goal, gen);
+				}
+				continue;
+			}
+			int c = nodeCluster[u];
+			int count = clusterNodeCount[c];
+			int slot = nodeSlot[u];
+			relax(u, nodePartner[u], 1, goal, gen);
+			for (int j = 0; j < count; j++) {
+				if (j != slot) {
+					relax(u, clusterNodes[c][j], intra[c][slot * count + j], goal, gen);
+				}
+			}
+			if (c == goalCluster) {
+				relax(u, goalNode, goalDist[slot], goal, gen);
+			}
+		}
+		if (!found) {
+			return -1;
+		}
+		return refine(startNode, goalNode, start, goal, startCluster, goalCluster, path);
+	}
+
+	private void relax(int u, int v, int cost, int goal, int gen) {
+		if (cost < 0) {
+			return;
+		}
+		int g = gScore[u] + cost;
+		int cell = v == nodeLimit + 1 ? goal : nodeCell[v];
+		if (stamp[v] != gen) {
+			stamp[v] = gen;
+			gScore[v] = g;
+			parentNode[v] = u;
+			openCount++;
+			open.add(v, g + search.getDistance(cell, goal));
+		} else if (g < gScore[v] && open.contains(v)) {
+			open.decreaseKey(v, open.getKey(v) - (gScore[v] - g));
+			gScore[v] = g;
+			parentNode[v] = u;
+		}
+	}
+
+	/* Turns the abstract path ending in goalNode into moves. */
+	private int refine(int startNode, int goalNode, int start, int goal, int startCluster, int goalCluster,
+			LinkedList<Action> path) {
+		int hops = 0;
+		for (int v = goalNode; v != startNode; v = parentNode[v]) {
+			hops++;
+		}
+		int[] chain = new int[hops + 1];
+		for (int v = goalNode, i = hops; i >= 0; i--) {
+			chain[i] = v;
+			v = parentNode[v];
+		}
+		int length = 0;
+		for (int i = 0; i < hops; i++) {
+			int a = chain[i];
+			int b = chain[i + 1];
+			int from = a == startNode ? start : nodeCell[a];
+			int to = b == goalNode ? goal : nodeCell[b];
+			int cluster;
+			if (a == startNode) {
+				cluster = startCluster;
+			} else if (b == goalNode) {
+				cluster = goalCluster;
+			} else if (nodePartner[a] == b) {
+				path.add(step(from, to));
+				length++;
+				continue;
+			} else {
+				cluster = nodeCluster[a];
+			}
+			length += localPath(from, to, cluster, path);
+		}
+		return length;
+	}
+
+	/*
+	 * The move between two neighboring cells. Compares rows rather than index
+	 * differences, which are ambiguous on a single column (to == from + 1 is
+	 * the cell below).
+	 */
+	private Action step(int from, int to) {
+		if (to / cols == from / cols) {
+			return to > from ? Action.MOVE_RIGHT : Action.MOVE_LEFT;
+		}
+		return to > from ? Action.MOVE_DOWN : Action.MOVE_UP;
+	}
+
+	private int localPath(int from, int to, int cluster, LinkedList<Action> path) {
+		if (from == to) {
+			return 0;
+		}
+		localSearch(from, cluster);
+		int length = localDist[local(to, cluster)];
+		Action[] moves = new Action[length];
+		int cell = to;
+		for (int i = length - 1; i >= 0; i--) {
+			int move = localMove[local(cell, cluster)];
+			moves[i] = Action.values()[move];
+			if (move == GridSearch.RIGHT) cell -= 1;
+			else if (move == GridSearch.LEFT) cell += 1;
+			else if (move == GridSearch.DOWN) cell -= cols;
+			else cell += cols;
+		}
+		for (Action move : moves) {
+			path.add(move);
+		}
+		return length;
+	}
+}
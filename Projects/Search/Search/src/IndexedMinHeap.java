@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of grid cells keyed by an int priority. Cells and keys are
+ * kept in primitive arrays and every cell knows its position in the heap, so a
+ * cell can be re-prioritized in place (decrease-key) instead of being inserted
+ * a second time.
+ *
+ * The sift operations follow java.util.PriorityQueue step for step, so for the
+ * same sequence of operations and keys the cells come out in the same order as
+ * they would from a PriorityQueue comparing the same keys.
+ */
+public class IndexedMinHeap {
+	private final int[] heap;
+	private final int[] position; // [cell] -> index in heap, or -1
+	private final int[] key; // [cell]
+	private int size;
+
+	public IndexedMinHeap(int cells) {
+		this.heap = new int[cells];
+		this.position = new int[cells];
+		this.key = new int[cells];
+		Arrays.fill(position, -1);
+		this.size = 0;
+	}
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+	public boolean contains(int cell) { return position[cell] >= 0; }
+	public int getKey(int cell) { return key[cell]; }
+
+	public void add(int cell, int priority) {
+		key[cell] = priority;
+		siftUp(size++, cell);
+	}
+
+	/* Lowers the priority of a cell that is already in the heap. */
+	public void decreaseKey(int cell, int priority) {
+		key[cell] = priority;
+		siftUp(position[cell], cell);
+	}
+
+	/* Removes and returns the cell with the lowest key. */
+	public int poll() {
+		int result = heap[0];
+		position[result] = -1;
+		int n = --size;
+		if (n > 0) {
+			siftDown(0, heap[n], n);
+		}
+		return result;
+	}
+
+	/* Empties the heap in O(size), leaving it ready for the next search. */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int k, int cell) {
+		int priority = key[cell];
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int e = heap[parent];
+			if (priority >= key[e]) {
+				break;
+			}
+			place(k, e);
+			k = parent;
+		}
+		place(k, cell);
+	}
+
+	private void siftDown(int k, int cell, int n) {
+		int priority = key[cell];
+		int half = n >>> 1;
+		while (k < half) {
+			int child = (k << 1) + 1;
+			int c = heap[child];
+			int right = child + 1;
+			if (right < n && key[c] > key[heap[right]]) {
+				c = heap[child = right];
+			}
+			if (priority <= key[c]) {
+				break;
+			}
+			place(k, c);
+			k = child;
+		}
+		place(k, cell);
+	}
+
+	private void place(int k, int cell) {
+		heap[k] = cell;
+		position[cell] = k;
+	}
+}
@@ -0,0 +1,160 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads maps straight into the packed tile store of an Environment, without
+ * building a String per row. A map file is memory-mapped and parsed in one
+ * pass. Two formats are read:
+ * - text, as in MapN.txt: one line per row, one character per tile
+ *   (R robot, C clean, D dirty, W wall, T target), lines ending in \n, \r\n
+ *   or \r (some of the bundled maps use \r),
+ * - binary, as written by save: a header (magic, rows, cols, robot row and
+ *   column) followed by the packed tiles, 2 bits per cell. Loading it is a
+ *   bulk copy, which is what large maps want at startup.
+ * Both are checked against their dimensions: every text row must have the
+ * same length and a binary file must hold exactly rows x cols cells, with
+ * the unused lanes of its last word zero.
+ *
+ * To convert a text map to the binary format, run
+ * java -cp bin MapLoader Map14.txt Map14.grid
+ */
+public class MapLoader {
+	private static final int MAGIC = 0x47524944; // "GRID"
+	private static final int HEADER_BYTES = 20;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java MapLoader <text map> <binary map>");
+			return;
+		}
+		Position robotPos = new Position(0, 0);
+		Environment env = load(new File(args[0]), robotPos);
+		save(env, robotPos, new File(args[1]));
+	}
+
+	/**
+	 * Loads a text or binary map and sets robotPos to the robot's tile.
+	 *
+	 * @throws IOException if the file cannot be read or is not a valid map
+	 */
+	public static Environment load(File file, Position robotPos) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Map too large to map into memory: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (size >= HEADER_BYTES && buffer.getInt(0) == MAGIC) {
+				return loadBinary(file, buffer, robotPos);
+			}
+			return loadText(file, buffer, robotPos);
+		}
+	}
+
+	private static Environment loadText(File file, ByteBuffer buffer, Position robotPos) throws IOException {
+		int size = buffer.limit();
+		int cols = 0;
+		while (cols < size && buffer.get(cols) != '\n' && buffer.get(cols) != '\r') {
+			cols++;
+		}
+		if (cols == 0) {
+			throw new IOException("Empty map: " + file);
+		}
+		int newline = 0;
+		if (cols < size) {
+			newline = buffer.get(cols) == '\r' && cols + 1 < size && buffer.get(cols + 1) == '\n' ? 2 : 1;
+		}
+		// Every row takes cols + newline bytes; only the last may lack its newline.
+		int stride = cols + newline;
+		int rows;
+		if (newline == 0) {
+			rows = 1;
+		} else if (size % stride == 0) {
+			rows = size / stride;
+		} else if ((size + newline) % stride == 0) {
+			rows = (size + newline) / stride;
+		} else {
+			throw new IOException("Rows of different lengths in " + file + ", expected " + cols + " tiles per row");
+		}
+		PackedTiles tiles = new PackedTiles(rows, cols);
+		int at = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				byte tile = buffer.get(at++);
+				switch (tile) {
+				case 'R': robotPos.row = row; robotPos.col = col; break;
+				case 'C': break;
+				case 'D': tiles.set(row, col, TileStatus.DIRTY); break;
+				case 'W': tiles.set(row, col, TileStatus.IMPASSABLE); break;
+				case 'T': tiles.set(row, col, TileStatus.TARGET); break;
+				default:
+					throw new IOException(invalid(file, row, col, tile == '\n' || tile == '\r'
+							? "row ends after " + col + " tiles, expected " + cols
+							: "unknown tile '" + (char) tile + "'"));
+				}
+			}
+			if (at < size && !endOfLine(buffer, at, newline, buffer.get(cols))) {
+				throw new IOException(invalid(file, row, cols, "row is longer than " + cols + " tiles"));
+			}
+			at += newline;
+		}
+		return new Environment(tiles);
+	}
+
+	/* Whether a line ending like the first one, \r\n or just terminator, starts at at. */
+	private static boolean endOfLine(ByteBuffer buffer, int at, int newline, byte terminator) {
+		if (newline == 2) {
+			return buffer.get(at) == '\r' && buffer.get(at + 1) == '\n';
+		}
+		return buffer.get(at) == terminator;
+	}
+
+	private static String invalid(File file, int row, int col, String problem) {
+		return "Invalid map " + file + " at row " + row + ", column " + col + ": " + problem;
+	}
+
+	private static Environment loadBinary(File file, ByteBuffer buffer, Position robotPos) throws IOException {
+		int rows = buffer.getInt(4);
+		int cols = buffer.getInt(8);
+		int robotRow = buffer.getInt(12);
+		int robotCol = buffer.getInt(16);
+		if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE) {
+			throw new IOException("Invalid dimensions " + rows + "x" + cols + " in " + file);
+		}
+		if (robotRow < 0 || robotRow >= rows || robotCol < 0 || robotCol >= cols) {
+			throw new IOException("Robot outside the map in " + file);
+		}
+		PackedTiles tiles = new PackedTiles(rows, cols);
+		if (buffer.limit() != HEADER_BYTES + 8L * tiles.getWordCount()) {
+			throw new IOException("Expected " + rows + "x" + cols + " tiles, but file size is " + buffer.limit()
+					+ " bytes: " + file);
+		}
+		buffer.position(HEADER_BYTES);
+		tiles.readWords(buffer.asLongBuffer());
+		// Stray bits there would count as walls or targets that are not on the map.
+		if (!tiles.isPaddingClear()) {
+			throw new IOException("Nonzero padding after the last of " + rows + "x" + cols + " tiles: " + file);
+		}
+		robotPos.row = robotRow;
+		robotPos.col = robotCol;
+		return new Environment(tiles);
+	}
+
+	/* Writes env, with the robot on robotPos, in the binary format. */
+	public static void save(Environment env, Position robotPos, File file) throws IOException {
+		PackedTiles tiles = env.getPackedTiles();
+		long size = HEADER_BYTES + 8L * tiles.getWordCount();
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw"); FileChannel channel = output.getChannel()) {
+			output.setLength(size);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(MAGIC).putInt(tiles.getRows()).putInt(tiles.getCols());
+			buffer.putInt(robotPos.row).putInt(robotPos.col);
+			tiles.writeWords(buffer.asLongBuffer());
+			buffer.force();
+		}
+	}
+}
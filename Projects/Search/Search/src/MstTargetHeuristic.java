@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * A lower bound on the cost of visiting every remaining target from a cell:
+ * the distance to the nearest target plus the weight of a minimum spanning
+ * tree over the remaining targets (Manhattan edge weights). Any walk that
+ * visits all targets contains a path to the first of them and a spanning
+ * tree of the rest, so the bound never overestimates.
+ *
+ * The tree does not depend on the cell, so while heading to one target it
+ * adds the same amount to every key and cannot change the order in which
+ * cells are expanded. estimate() therefore leaves it out. Robot keeps one
+ * for the targets astar141516 started from and asks tourLowerBound() for the
+ * bound on the whole tour, which SearchBenchmark checks against the length
+ * of the path found. The tree is built on demand, at most once per removed
+ * target. Under the Manhattan metric the minimum spanning tree only uses
+ * edges from each target to its nearest neighbor in each of the eight
+ * octants around it; a sweep over a Fenwick tree finds those (at most 4n)
+ * candidate edges and Kruskal picks the tree, in O(n log n) with primitive
+ * arrays only.
+ */
+public class MstTargetHeuristic extends NearestTargetHeuristic {
+	// Coordinates are offset by this to keep them positive in sort keys.
+	private static final int OFFSET = 1 << 20;
+
+	// Work arrays for building the tree, allocated the first time it is built.
+	private int[] x;
+	private int[] y;
+	private long[] order;
+	private int[] diagonals;
+	private int[] fenwickDistance;
+	private int[] fenwickTarget;
+	private long[] edges;
+	private int[] parent;
+	private int treeWeight;
+	private boolean treeDirty;
+
+	public MstTargetHeuristic(GridSearch search, LinkedList<Position> targets) {
+		super(search, targets);
+		this.treeDirty = true;
+	}
+
+	@Override
+	public void removeTarget(int cell) {
+		super.removeTarget(cell);
+		treeDirty = true;
+	}
+
+	/* The distance to the nearest target; see tourLowerBound for the whole tour. */
+	@Override
+	public int estimate(int cell) {
+		return nearest(cell);
+	}
+
+	/* A lower bound on the cost of visiting every remaining target from cell. */
+	public int tourLowerBound(int cell) {
+		return nearest(cell) + getTreeWeight();
+	}
+
+	public int getTreeWeight() {
+		if (treeDirty) {
+			treeWeight = spanningTreeWeight();
+			treeDirty = false;
+		}
+		return treeWeight;
+	}
+
+	private int spanningTreeWeight() {
+		int n = targetCount;
+		if (n <= 1) {
+			return 0;
+		}
+		if (x == null) {
+			int capacity = this.targets.length;
+			x = new int[capacity];
+			y = new int[capacity];
+			order = new long[capacity];
+			diagonals = new int[capacity];
+			fenwickDistance = new int[capacity + 1];
+			fenwickTarget = new int[capacity + 1];
+			edges = new long[4 * capacity];
+			parent = new int[capacity];
+		}
+		for (int i = 0; i < n; i++) {
+			y[i] = targets[i] / cols;
+			x[i] = targets[i] - y[i] * cols;
+		}
+		int edgeCount = 0;
+		// Each pass finds, for every target, its nearest neighbor in one pair of
+		// opposite octants; between passes the map is mirrored or transposed,
+		// which keeps Manhattan distances.
+		for (int k = 0; k < 4; k++) {
+			if (k == 1 || k == 3) {
+				for (int i = 0; i < n; i++) {
+					int t = x[i];
+					x[i] = y[i];
+					y[i] = t;
+				}
+			} else if (k == 2) {
+				for (int i = 0; i < n; i++) {
+					x[i] = -x[i];
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				order[i] = ((long) (x[i] + OFFSET) << 42) | ((long) (y[i] + OFFSET) << 20) | i;
+				diagonals[i] = y[i] - x[i];
+			}
+			Arrays.sort(order, 0, n);
+			Arrays.sort(diagonals, 0, n);
+			Arrays.fill(fenwickDistance, 0, n + 1, Integer.MAX_VALUE);
+			// From the largest x down: the nearest target j seen so far with
+			// x[j] >= x[i] and y[j] - x[j] >= y[i] - x[i] is the one with the
+			// smallest x[j] + y[j].
+			for (int s = n - 1; s >= 0; s--) {
+				int i = (int) order[s] & 0xFFFFF;
+				// Position of the diagonal, counted from the largest, 1-based.
+				int position = n - lowerBound(diagonals, n, y[i] - x[i]);
+				int best = Integer.MAX_VALUE;
+				int j = -1;
+				for (int p = position; p > 0; p -= p & -p) {
+					if (fenwickDistance[p] < best) {
+						best = fenwickDistance[p];
+						j = fenwickTarget[p];
+					}
+				}
+				if (j >= 0) {
+					edges[edgeCount++] = ((long) (best - x[i] - y[i]) << 40) | ((long) i << 20) | j;
+				}
+				int distance = x[i] + y[i];
+				for (int p = position; p <= n; p += p & -p) {
+					if (distance < fenwickDistance[p]) {
+						fenwickDistance[p] = distance;
+						fenwickTarget[p] = i;
+					}
+				}
+			}
+		}
+		Arrays.sort(edges, 0, edgeCount);
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+		}
+		int weight = 0;
+		int joined = 1;
+		for (int e = 0; e < edgeCount && joined < n; e++) {
+			int a = find((int) (edges[e] >>> 20) & 0xFFFFF);
+			int b = find((int) edges[e] & 0xFFFFF);
+			if (a != b) {
+				parent[a] = b;
+				weight += (int) (edges[e] >>> 40);
+				joined++;
+			}
+		}
+		return weight;
+	}
+
+	/* The first of the n sorted values that is at least value. */
+	private static int lowerBound(int[] values, int n, int value) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.LinkedList;
+
+/**
+ * Estimates the Manhattan distance from a cell to the nearest remaining
+ * target. Targets are kept in a uniform bucket grid sized so that a bucket
+ * holds about one target, and a lookup scans rings of buckets around the cell
+ * until no closer target can exist. A lookup therefore touches a handful of
+ * buckets instead of every target.
+ */
+public class NearestTargetHeuristic implements TargetHeuristic {
+	protected final int cols;
+	protected final int[] targets; // remaining targets, unordered
+	protected int targetCount;
+
+	private final int bucketSize;
+	private final int bucketRows;
+	private final int bucketCols;
+	private final int[][] buckets; // [bucket] -> target cells
+	private final int[] bucketCount;
+
+	public NearestTargetHeuristic(GridSearch search, LinkedList<Position> targets) {
+		this.cols = search.getCols();
+		this.targets = new int[targets.size()];
+		this.targetCount = 0;
+		int cells = search.getRows() * cols;
+		this.bucketSize = Math.max(1, (int) Math.sqrt((double) cells / Math.max(1, targets.size())));
+		this.bucketRows = (search.getRows() + bucketSize - 1) / bucketSize;
+		this.bucketCols = (cols + bucketSize - 1) / bucketSize;
+		this.buckets = new int[bucketRows * bucketCols][];
+		this.bucketCount = new int[bucketRows * bucketCols];
+		for (Position p : targets) {
+			addTarget(search.index(p.row, p.col));
+		}
+	}
+
+	private int bucketOf(int cell) {
+		int row = cell / cols;
+		return (row / bucketSize) * bucketCols + (cell - row * cols) / bucketSize;
+	}
+
+	private void addTarget(int cell) {
+		int b = bucketOf(cell);
+		if (buckets[b] == null) {
+			buckets[b] = new int[2];
+		} else if (bucketCount[b] == buckets[b].length) {
+			int[] grown = new int[bucketCount[b] * 2];
+			System.arraycopy(buckets[b], 0, grown, 0, bucketCount[b]);
+			buckets[b] = grown;
+		}
+		buckets[b][bucketCount[b]++] = cell;
+		targets[targetCount++] = cell;
+	}
+
+	@Override
+	public void removeTarget(int cell) {
+		int b = bucketOf(cell);
+		if (removeFrom(buckets[b], bucketCount[b], cell)) {
+			bucketCount[b]--;
+			removeFrom(targets, targetCount--, cell);
+		}
+	}
+
+	/* Swap-removes cell from the first count entries of list. */
+	private static boolean removeFrom(int[] list, int count, int cell) {
+		for (int i = 0; i < count; i++) {
+			if (list[i] == cell) {
+				list[i] = list[count - 1];
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getTargetCount() {
+		return targetCount;
+	}
+
+	@Override
+	public int estimate(int cell) {
+		return nearest(cell);
+	}
+
+	/*
+	 * Any target in ring r (Chebyshev distance r in buckets) is at least
+	 * (r - 1) * bucketSize + 1 steps away, so the scan stops as soon as the
+	 * best distance found so far cannot be beaten by the next ring.
+	 */
+	protected int nearest(int cell) {
+		if (targetCount == 0) {
+			return 0;
+		}
+		int row = cell / cols;
+		int col = cell - row * cols;
+		int br = row / bucketSize;
+		int bc = col / bucketSize;
+		int maxRing = Math.max(Math.max(br, bucketRows - 1 - br), Math.max(bc, bucketCols - 1 - bc));
+		int best = Integer.MAX_VALUE;
+		for (int r = 0; r <= maxRing; r++) {
+			if (r > 0 && best <= (r - 1) * bucketSize) {
+				break;
+			}
+			for (int dr = -r; dr <= r; dr++) {
+				int rr = br + dr;
+				if (rr < 0 || rr >= bucketRows) {
+					continue;
+				}
+				// Inner rows of the ring only contribute their two end buckets.
+				int step = (dr == -r || dr == r) ? 1 : Math.max(1, 2 * r);
+				for (int dc = -r; dc <= r; dc += step) {
+					int cc = bc + dc;
+					if (cc < 0 || cc >= bucketCols) {
+						continue;
+					}
+					int b = rr * bucketCols + cc;
+					int[] bucket = buckets[b];
+					for (int i = 0; i < bucketCount[b]; i++) {
+						int t = bucket[i];
+						int tRow = t / cols;
+						int d = Math.abs(row - tRow) + Math.abs(col - (t - tRow * cols));
+						if (d < best) {
+							best = d;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,122 @@
+import java.nio.LongBuffer;
+
+/**
+ * The status of every tile of a grid, packed into 2 bits per cell (the
+ * ordinal of its TileStatus), 32 cells to a long. Cells are numbered row by
+ * row, cell = row * cols + col, and cell c lives in bits 2 * (c % 32) and
+ * 2 * (c % 32) + 1 of word c / 32.
+ *
+ * Compared to a Tile[][] this takes 1/4 byte instead of about 20 bytes per
+ * cell, and passability is a shift and a mask on one word with no object to
+ * dereference. wallLanes answers it for 32 cells at once.
+ */
+public class PackedTiles {
+	public static final int CELLS_PER_WORD = 32;
+	private static final TileStatus[] STATUSES = TileStatus.values();
+	private static final long LOW_BITS = 0x5555555555555555L;
+
+	private final int rows;
+	private final int cols;
+	private final long[] words;
+
+	/* A rows x cols grid of CLEAN tiles. */
+	public PackedTiles(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.words = new long[(int) (((long) rows * cols + CELLS_PER_WORD - 1) / CELLS_PER_WORD)];
+	}
+
+	/* Traditional Getters */
+	public int getRows() { return rows; }
+	public int getCols() { return cols; }
+	public int getWordCount() { return words.length; }
+
+	/* Bytes held by the packed statuses. */
+	public long getMemoryBytes() {
+		return 8L * words.length;
+	}
+
+	public TileStatus get(int row, int col) {
+		return STATUSES[code(row * cols + col)];
+	}
+
+	public TileStatus get(int cell) {
+		return STATUSES[code(cell)];
+	}
+
+	public void set(int row, int col, TileStatus status) {
+		int cell = row * cols + col;
+		int shift = (cell & (CELLS_PER_WORD - 1)) << 1;
+		int word = cell >>> 5;
+		words[word] = (words[word] & ~(3L << shift)) | ((long) status.ordinal() << shift);
+	}
+
+	private int code(int cell) {
+		return (int) (words[cell >>> 5] >>> ((cell & (CELLS_PER_WORD - 1)) << 1)) & 3;
+	}
+
+	public boolean isPassable(int cell) {
+		return code(cell) != TileStatus.IMPASSABLE.ordinal();
+	}
+
+	/**
+	 * Returns the walls among the 32 cells of a word: bit 2 * i is set if the
+	 * i-th cell of the word is IMPASSABLE, all other bits are clear. Lanes past
+	 * the last cell of the grid read as CLEAN.
+	 */
+	public long wallLanes(int word) {
+		long w = words[word];
+		// A lane is a wall if its high bit is set and its low bit is not.
+		return (w >>> 1) & ~w & LOW_BITS;
+	}
+
+	/* Like wallLanes, for the TARGET cells of a word. */
+	public long targetLanes(int word) {
+		long w = words[word];
+		return (w >>> 1) & w & LOW_BITS;
+	}
+
+	/* Number of cells that are not walls. */
+	public int countPassable() {
+		long walls = 0;
+		for (int word = 0; word < words.length; word++) {
+			walls += Long.bitCount(wallLanes(word));
+		}
+		return (int) ((long) rows * cols - walls);
+	}
+
+	/* Replaces all statuses with those in source, which holds getWordCount() words. */
+	public void readWords(LongBuffer source) {
+		source.get(words);
+	}
+
+	/* Whether the lanes past the last cell of the grid are all CLEAN, i.e. zero. */
+	public boolean isPaddingClear() {
+		int used = (int) ((long) rows * cols % CELLS_PER_WORD);
+		return used == 0 || words[words.length - 1] >>> (used << 1) == 0;
+	}
+
+	/* Writes all statuses into target. */
+	public void writeWords(LongBuffer target) {
+		target.put(words);
+	}
+
+	/* Writes the passability of every cell into passable, a word at a time. */
+	public void copyPassable(boolean[] passable) {
+		int cells = rows * cols;
+		for (int word = 0; word < words.length; word++) {
+			long walls = wallLanes(word);
+			int base = word << 5;
+			int end = Math.min(cells, base + CELLS_PER_WORD);
+			if (walls == 0) {
+				for (int cell = base; cell < end; cell++) {
+					passable[cell] = true;
+				}
+			} else {
+				for (int cell = base; cell < end; cell++) {
+					passable[cell] = (walls & 1L << ((cell - base) << 1)) == 0;
+				}
+			}
+		}
+	}
+}
@@ -1,8 +1,5 @@
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
+import java.util.ListIterator;
 
 /**
  * Represents an intelligent agent moving through a particular room. The robot
@@ -13,14 +10,23 @@ import java.util.PriorityQueue;
  */
 
 public class Robot {
+	private static final int HPA_CLUSTER_SIZE = 16;
+
 	private Environment env;
 	private int posRow;
 	private int posCol;
 	private LinkedList<Action> path;
+	private ListIterator<Action> actions;
+	private int actionsSize; // path.size() when actions was created
 	private boolean pathFound;
 	private long openCount;
 	private int pathLength;
+	private MstTargetHeuristic tour; // the targets when astar141516 started
+	private int tourStart;
 	private int index;
+	private GridSearch search;
+	private DistanceOracle oracle;
+	private HierarchicalPlanner planner;
 
 	/**
 	 * Initializes a Robot on a specific tile in the environment.
@@ -50,6 +56,15 @@ public class Robot {
 		return this.pathLength;
 	}
 
+	/*
+	 * A lower bound on the length of a path from the start that visits every
+	 * target, or -1 unless astar141516 ran on at least one target. The
+	 * spanning tree behind it is only built when this is called.
+	 */
+	public int getTourLowerBound() {
+		return this.tour == null ? -1 : this.tour.tourLowerBound(this.tourStart);
+	}
+
 	public void resetOpenCount() {
 		this.openCount = 0;
 	}
@@ -85,7 +100,15 @@ public class Robot {
 	 */
 	public Action getAction() {
 		if (index < pathLength) {
-			return path.get(index++);
+			// Walk the list instead of path.get(index), which is O(index). A
+			// search may append to the path after stepping has started, which
+			// invalidates the iterator, so it is then created again at index.
+			if (actions == null || actionsSize != path.size()) {
+				actions = path.listIterator(index);
+				actionsSize = path.size();
+			}
+			index++;
+			return actions.next();
 		} else {
 			return Action.DO_NOTHING;
 		}
@@ -98,117 +121,70 @@ public class Robot {
 	 * the algorithm adds a node to the open data structure, i.e. its queue.
 	 */
 	public void bfs() {
-		LinkedList<Position> queue = new LinkedList<Position>();
-		boolean[][] hasVisited = new boolean[env.getRows()][env.getCols()];
-		Action[][] moves = new Action[env.getRows()][env.getCols()];
-		for (int i = 0; i < hasVisited.length; i++) {
-			for (int j = 0; j < hasVisited[0].length; j++) {
-				hasVisited[i][j] = false;
-				moves[i][j] = Action.DO_NOTHING;
-			}
-		}
-		Position root = new Position(posRow, posCol);
-		queue.add(root);
-		this.openCount++;
-		hasVisited[root.row][root.col] = true;
+		GridSearch search = getSearch();
 		LinkedList<Position> targets = env.getTargets();
-		while (!targets.isEmpty()) {
-			Boolean currentTargetFound = false;
-			Position currentTarget = null;
-			while (!queue.isEmpty()) {
-				Position current = queue.poll();
-				// System.out.println(current.row + " " + current.col);
-				if (env.validPos(current.row, current.col + 1)) {
-					Position next = new Position(current.row, current.col + 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col + 1] = Action.MOVE_RIGHT;
-						if (targetFind(next, targets)) {
-							currentTarget = new Position(next.row, next.col);
-							currentTargetFound = true;
-							break;
-						}
-						this.openCount++;
-						queue.add(next);
-					}
-				}
-				if (env.validPos(current.row, current.col - 1)) {
-					Position next = new Position(current.row, current.col - 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col - 1] = Action.MOVE_LEFT;
-						if (targetFind(next, targets)) {
-							currentTarget = new Position(next.row, next.col);
-							currentTargetFound = true;
-							break;
-						}
-						this.openCount++;
-						queue.add(next);
-					}
-				}
-				if (env.validPos(current.row + 1, current.col)) {
-					Position next = new Position(current.row + 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row + 1][current.col] = Action.MOVE_DOWN;
-						if (targetFind(next, targets)) {
-							currentTarget = new Position(next.row, next.col);
-							currentTargetFound = true;
-							break;
-						}
-						this.openCount++;
-						queue.add(next);
-					}
-				}
-				if (env.validPos(current.row - 1, current.col)) {
-					Position next = new Position(current.row - 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row - 1][current.col] = Action.MOVE_UP;
-						if (targetFind(next, targets)) {
-							currentTarget = new Position(next.row, next.col);
-							currentTargetFound = true;
-							break;
-						}
-						this.openCount++;
-						queue.add(next);
-					}
-				}
+		if (oracle != null && oracle.covers(targets)) {
+			followOracle(search, targets);
+			return;
+		}
+		search.setTargets(targets);
+		search.resetOpenCount();
+		int current = search.index(posRow, posCol);
+		search.incOpenCount();
+		while (search.getTargetCount() > 0) {
+			int currentTarget = search.bfs(current, GridSearch.ORDER_RLDU);
+			if (currentTarget < 0) {
+				this.pathFound = false;
+				break;
 			}
-			if (currentTargetFound) {
-				this.pathFound = true;
-				LinkedList<Action> thisTurn = new LinkedList<Action>();
-				removeTargets(currentTarget, targets);
-				int row = currentTarget.row;
-				int col = currentTarget.col;
-				while (!moves[row][col].equals(Action.DO_NOTHING)) {
-					thisTurn.addFirst(moves[row][col]);
-					this.pathLength++;
-					if (moves[row][col].equals(Action.MOVE_RIGHT))
-						col--;
-					else if (moves[row][col].equals(Action.MOVE_LEFT))
-						col++;
-					else if (moves[row][col].equals(Action.MOVE_UP))
-						row++;
-					else
-						row--;
-				}
-				for (int i = 0; i < hasVisited.length; i++) {
-					for (int j = 0; j < hasVisited[0].length; j++) {
-						hasVisited[i][j] = false;
-						moves[i][j] = Action.DO_NOTHING;
-					}
-				}
-				this.path.addAll(thisTurn);
-				queue.clear();
-				queue.add(currentTarget);
-				this.openCount++;
-				hasVisited[currentTarget.row][currentTarget.col] = true;
-			} else {
+			this.pathFound = true;
+			search.removeTarget(currentTarget);
+			this.pathLength += search.tracePath(currentTarget, this.path);
+			current = currentTarget;
+			search.incOpenCount();
+		}
+		this.openCount += search.getOpenCount();
+	}
+
+	/*
+	 * Walks to the nearest remaining target, one target at a time, using the
+	 * precomputed distances instead of searching; no states are opened. Each
+	 * leg is as short as the one bfs would search for, but among equally near
+	 * targets the oracle may pick a different one, so the routes can differ.
+	 */
+	private void followOracle(GridSearch search, LinkedList<Position> targets) {
+		search.setTargets(targets);
+		int current = search.index(posRow, posCol);
+		while (search.getTargetCount() > 0) {
+			int currentTarget = oracle.nearestTarget(current, search);
+			if (currentTarget < 0) {
 				this.pathFound = false;
 				break;
 			}
+			this.pathFound = true;
+			search.removeTarget(currentTarget);
+			this.pathLength += oracle.tracePath(current, currentTarget, this.path, GridSearch.ORDER_RLDU);
+			current = currentTarget;
+		}
+	}
+
+	/*
+	 * Lets bfs() answer from precomputed distances when they cover all the
+	 * targets of the environment. The oracle must be built for the same map.
+	 */
+	public void setDistanceOracle(DistanceOracle oracle) {
+		this.oracle = oracle;
+	}
+
+	/*
+	 * The search engine is built once per robot, as the walls of the
+	 * environment never change.
+	 */
+	private GridSearch getSearch() {
+		if (this.search == null) {
+			this.search = new GridSearch(env);
 		}
+		return this.search;
 	}
 
 	/**
@@ -218,11 +194,10 @@ public class Robot {
 	 * algorithm adds a node to the open data structure, i.e. its field that holds
 	 * the node to be explored next.
 	 */
-	/*
-	 * It looks like in this assignment we do not need to do greedy
-	 */
 	public void greedy() {
-
+		GridSearch search = getSearch();
+		LinkedList<Position> targets = env.getTargets();
+		visitTargets(search, targets, new NearestTargetHeuristic(search, targets), true);
 	}
 
 	public int getDistance(Position current, Position target) {
@@ -241,351 +216,132 @@ public class Robot {
 	public void astar() {
 		LinkedList<Position> targets = env.getTargets();
 		Position target = targets.poll();
-		PriorityQueue<PositionContainer> queue = new PriorityQueue<PositionContainer>(
-				new Comparator<PositionContainer>() {
-					@Override
-					public int compare(PositionContainer p0, PositionContainer p1) {
-						return (p0.distance - p1.distance) + getDistance(p0.p, target) - getDistance(p1.p, target);
-					}
-				});
-		boolean[][] hasVisited = new boolean[env.getRows()][env.getCols()];
-		Action[][] moves = new Action[env.getRows()][env.getCols()];
-		for (int i = 0; i < hasVisited.length; i++) {
-			for (int j = 0; j < hasVisited[0].length; j++) {
-				hasVisited[i][j] = false;
-				moves[i][j] = Action.DO_NOTHING;
-			}
+		if (target == null) {
+			return;
 		}
-		PositionContainer root = new PositionContainer(new Position(posRow, posCol), 0);
-		queue.add(root);
-		this.openCount++;
-		hasVisited[root.p.row][root.p.col] = true;
-		while (!queue.isEmpty()) {
-			PositionContainer currentContainer = queue.poll();
-			Position current = currentContainer.p;
-			int distance = currentContainer.distance;
-			// System.out.println(current.row + " " + current.col);
-			if (comparePosition(current, target)) {
-				this.pathFound = true;
-				break;
-			}
-			if (env.validPos(current.row, current.col + 1)) {
-				Position next = new Position(current.row, current.col + 1);
-				if (!hasVisited[next.row][next.col]) {
-					hasVisited[next.row][next.col] = true;
-					moves[current.row][current.col + 1] = Action.MOVE_RIGHT;
-					this.openCount++;
-					queue.add(new PositionContainer(next, distance + 1));
-				}
-			}
-			if (env.validPos(current.row, current.col - 1)) {
-				Position next = new Position(current.row, current.col - 1);
-				if (!hasVisited[next.row][next.col]) {
-					hasVisited[next.row][next.col] = true;
-					moves[current.row][current.col - 1] = Action.MOVE_LEFT;
-					this.openCount++;
-					queue.add(new PositionContainer(next, distance + 1));
-				}
-			}
-			if (env.validPos(current.row + 1, current.col)) {
-				Position next = new Position(current.row + 1, current.col);
-				if (!hasVisited[next.row][next.col]) {
-					hasVisited[next.row][next.col] = true;
-					moves[current.row + 1][current.col] = Action.MOVE_DOWN;
-					this.openCount++;
-					queue.add(new PositionContainer(next, distance + 1));
-				}
-			}
-			if (env.validPos(current.row - 1, current.col)) {
-				Position next = new Position(current.row - 1, current.col);
-				if (!hasVisited[next.row][next.col]) {
-					hasVisited[next.row][next.col] = true;
-					moves[current.row - 1][current.col] = Action.MOVE_UP;
-					this.openCount++;
-					queue.add(new PositionContainer(next, distance + 1));
-				}
-			}
+		GridSearch search = getSearch();
+		search.resetOpenCount();
+		int goal = search.index(target.row, target.col);
+		search.incOpenCount();
+		if (search.astar(search.index(posRow, posCol), goal, GridSearch.ORDER_RLDU)) {
+			this.pathFound = true;
+			this.pathLength += search.tracePath(goal, this.path);
+		}
+		this.openCount += search.getOpenCount();
+	}
 
+	/**
+	 * This method implements jump point search, which finds a path as short as
+	 * astar() but only places jump points on open. Like astar(), it heads for
+	 * the first target only.
+	 */
+	public void jps() {
+		LinkedList<Position> targets = env.getTargets();
+		Position target = targets.poll();
+		if (target == null) {
+			return;
 		}
-		if (this.pathFound) {
-			int row = target.row;
-			int col = target.col;
-			while (!moves[row][col].equals(Action.DO_NOTHING)) {
-				this.path.addFirst(moves[row][col]);
-				this.pathLength++;
-				if (moves[row][col].equals(Action.MOVE_RIGHT))
-					col--;
-				else if (moves[row][col].equals(Action.MOVE_LEFT))
-					col++;
-				else if (moves[row][col].equals(Action.MOVE_UP))
-					row++;
-				else
-					row--;
-			}
+		GridSearch search = getSearch();
+		search.resetOpenCount();
+		int goal = search.index(target.row, target.col);
+		search.incOpenCount();
+		if (search.jps(search.index(posRow, posCol), goal)) {
+			this.pathFound = true;
+			this.pathLength += search.traceJumpPath(goal, this.path);
 		}
+		this.openCount += search.getOpenCount();
 	}
 
-	public void astar101112() {
+	/**
+	 * This method implements hierarchical path planning (HPA*): it searches a
+	 * small graph of entrances between clusters of the map and then refines
+	 * that route into moves. The path may be slightly longer than the one of
+	 * astar(). Like astar(), it heads for the first target only. The open count
+	 * is the number of entrances placed on open.
+	 */
+	public void hpa() {
 		LinkedList<Position> targets = env.getTargets();
-		HashSet<Position> set = new HashSet<Position>();
-		PositionContainer root = new PositionContainer(new Position(posRow, posCol), 0);
-		Position current = root.p; 
-		PriorityQueue<PositionContainer> queue = new PriorityQueue<PositionContainer>(
-				new Comparator<PositionContainer>() {
-					@Override
-					public int compare(PositionContainer p0, PositionContainer p1) {
-						int min = Integer.MAX_VALUE;
-						int re = -1;
-						
-						for (Position target : targets) {
-							int p0Distance = p0.distance + getDistance(p0.p, target) 
-							+ findDistanceToUnvisitedCorners(p0.p, set);
-							int p1Distance = p1.distance + getDistance(p1.p, target) 
-							+ findDistanceToUnvisitedCorners(p1.p, set);
-							if (p0Distance < min) {
-								min = p0Distance;
-								re = -1;
-							}
-							if (p1Distance < min) {
-								min = p1Distance;
-								re = 1;
-							}
-						}
-						return re;
-					}
-				});
-		boolean[][] hasVisited = new boolean[env.getRows()][env.getCols()];
-		queue.add(root);
-		Action[][] moves = new Action[env.getRows()][env.getCols()];
-		for (int i = 0; i < hasVisited.length; i++) {
-			for (int j = 0; j < hasVisited[0].length; j++) {
-				hasVisited[i][j] = false;
-				moves[i][j] = Action.DO_NOTHING;
-			}
+		Position target = targets.poll();
+		if (target == null) {
+			return;
 		}
-		
-		this.openCount++;
-		hasVisited[root.p.row][root.p.col] = true;
-		while (!targets.isEmpty()) {
-			Position currentTarget = null;
-			while (!queue.isEmpty()) {
-				PositionContainer currentContainer = queue.poll();
-				current = currentContainer.p;
-				compareCorner(current, set);
-				int distance = currentContainer.distance;
-				//System.out.println(current.row + " " + current.col);
-				if (targetFind(current, targets)) {
-					removeTargets(current, targets);
-					currentTarget = current;
-					this.pathFound = true;
-					break;
-				}
-				if (env.validPos(current.row + 1, current.col)) {
-					Position next = new Position(current.row + 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row + 1][current.col] = Action.MOVE_DOWN;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				if (env.validPos(current.row, current.col - 1)) {
-					Position next = new Position(current.row, current.col - 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col - 1] = Action.MOVE_LEFT;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				if (env.validPos(current.row, current.col + 1)) {
-					Position next = new Position(current.row, current.col + 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col + 1] = Action.MOVE_RIGHT;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				
-				
-				if (env.validPos(current.row - 1, current.col)) {
-					Position next = new Position(current.row - 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row - 1][current.col] = Action.MOVE_UP;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-
-			}
+		GridSearch search = getSearch();
+		if (this.planner == null) {
+			this.planner = new HierarchicalPlanner(search, HPA_CLUSTER_SIZE);
+		}
+		planner.resetOpenCount();
+		int length = planner.plan(search.index(posRow, posCol), search.index(target.row, target.col), this.path);
+		if (length >= 0) {
+			this.pathFound = true;
+			this.pathLength += length;
+		}
+		this.openCount += planner.getOpenCount() + 1;
+	}
 
-			if (this.pathFound && currentTarget != null) {
-				this.pathFound = true;
-				LinkedList<Action> thisTurn = new LinkedList<Action>();
-				int row = currentTarget.row;
-				int col = currentTarget.col;
-				while (!moves[row][col].equals(Action.DO_NOTHING)) {
-					thisTurn.addFirst(moves[row][col]);
-					this.pathLength++;
-					if (moves[row][col].equals(Action.MOVE_RIGHT))
-						col--;
-					else if (moves[row][col].equals(Action.MOVE_LEFT))
-						col++;
-					else if (moves[row][col].equals(Action.MOVE_UP))
-						row++;
-					else
-						row--;
-				}
-				for (int i = 0; i < hasVisited.length; i++) {
-					for (int j = 0; j < hasVisited[0].length; j++) {
-						hasVisited[i][j] = false;
-						moves[i][j] = Action.DO_NOTHING;
-					}
-				}
-				this.path.addAll(thisTurn);
-				queue.clear();
-				queue.add(new PositionContainer(currentTarget, 0));
-				this.openCount++;
-				hasVisited[currentTarget.row][currentTarget.col] = true;
-			} else {
-				this.pathFound = false;
-				break;
-			}
+	/*
+	 * Lets hpa() reuse an abstraction that was built, and possibly updated,
+	 * elsewhere. The planner must be built for the same map.
+	 */
+	public void setHierarchicalPlanner(HierarchicalPlanner planner) {
+		this.planner = planner;
+		if (planner != null) {
+			this.search = planner.getSearch();
 		}
 	}
-	
-	//It is the same as 101112
+
+	/*
+	 * Visits every target, always heading for the nearest remaining one. The
+	 * nearest target is found through a spatial index instead of a scan over
+	 * all targets.
+	 */
+	public void astar101112() {
+		GridSearch search = getSearch();
+		LinkedList<Position> targets = env.getTargets();
+		visitTargets(search, targets, new NearestTargetHeuristic(search, targets), false);
+	}
+
+	/*
+	 * The same search as astar101112, which also keeps the targets it started
+	 * from, so that getTourLowerBound can bound the whole tour: the distance
+	 * to the nearest target plus a minimum spanning tree over all targets.
+	 * The tree is the same for every cell of a leg and would not change the
+	 * order of expansion, so the search itself does not use it.
+	 */
 	public void astar141516() {
+		GridSearch search = getSearch();
 		LinkedList<Position> targets = env.getTargets();
-		HashSet<Position> set = new HashSet<Position>();
-		PositionContainer root = new PositionContainer(new Position(posRow, posCol), 0);
-		Position current = root.p; 
-		PriorityQueue<PositionContainer> queue = new PriorityQueue<PositionContainer>(
-				new Comparator<PositionContainer>() {
-					@Override
-					public int compare(PositionContainer p0, PositionContainer p1) {
-						int min = Integer.MAX_VALUE;
-						int re = -1;
-						
-						for (Position target : targets) {
-							int p0Distance = p0.distance + getDistance(p0.p, target) 
-							+ findDistanceToUnvisitedCorners(p0.p, set);
-							int p1Distance = p1.distance + getDistance(p1.p, target) 
-							+ findDistanceToUnvisitedCorners(p1.p, set);
-							if (p0Distance < min) {
-								min = p0Distance;
-								re = -1;
-							}
-							if (p1Distance < min) {
-								min = p1Distance;
-								re = 1;
-							}
-						}
-						return re;
-					}
-				});
-		boolean[][] hasVisited = new boolean[env.getRows()][env.getCols()];
-		queue.add(root);
-		Action[][] moves = new Action[env.getRows()][env.getCols()];
-		for (int i = 0; i < hasVisited.length; i++) {
-			for (int j = 0; j < hasVisited[0].length; j++) {
-				hasVisited[i][j] = false;
-				moves[i][j] = Action.DO_NOTHING;
-			}
+		if (!targets.isEmpty()) {
+			this.tour = new MstTargetHeuristic(search, targets);
+			this.tourStart = search.index(posRow, posCol);
 		}
-		
-		this.openCount++;
-		hasVisited[root.p.row][root.p.col] = true;
-		while (!targets.isEmpty()) {
-			Position currentTarget = null;
-			while (!queue.isEmpty()) {
-				PositionContainer currentContainer = queue.poll();
-				current = currentContainer.p;
-				compareCorner(current, set);
-				int distance = currentContainer.distance;
-				//System.out.println(current.row + " " + current.col);
-				if (targetFind(current, targets)) {
-					removeTargets(current, targets);
-					currentTarget = current;
-					this.pathFound = true;
-					break;
-				}
-				if (env.validPos(current.row + 1, current.col)) {
-					Position next = new Position(current.row + 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row + 1][current.col] = Action.MOVE_DOWN;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				if (env.validPos(current.row, current.col - 1)) {
-					Position next = new Position(current.row, current.col - 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col - 1] = Action.MOVE_LEFT;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				if (env.validPos(current.row, current.col + 1)) {
-					Position next = new Position(current.row, current.col + 1);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row][current.col + 1] = Action.MOVE_RIGHT;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-				
-				
-				if (env.validPos(current.row - 1, current.col)) {
-					Position next = new Position(current.row - 1, current.col);
-					if (!hasVisited[next.row][next.col]) {
-						hasVisited[next.row][next.col] = true;
-						moves[current.row - 1][current.col] = Action.MOVE_UP;
-						this.openCount++;
-						queue.add(new PositionContainer(next, distance + 1));
-					}
-				}
-
-			}
+		visitTargets(search, targets, new NearestTargetHeuristic(search, targets), false);
+	}
 
-			if (this.pathFound && currentTarget != null) {
-				this.pathFound = true;
-				LinkedList<Action> thisTurn = new LinkedList<Action>();
-				int row = currentTarget.row;
-				int col = currentTarget.col;
-				while (!moves[row][col].equals(Action.DO_NOTHING)) {
-					thisTurn.addFirst(moves[row][col]);
-					this.pathLength++;
-					if (moves[row][col].equals(Action.MOVE_RIGHT))
-						col--;
-					else if (moves[row][col].equals(Action.MOVE_LEFT))
-						col++;
-					else if (moves[row][col].equals(Action.MOVE_UP))
-						row++;
-					else
-						row--;
-				}
-				for (int i = 0; i < hasVisited.length; i++) {
-					for (int j = 0; j < hasVisited[0].length; j++) {
-						hasVisited[i][j] = false;
-						moves[i][j] = Action.DO_NOTHING;
-					}
-				}
-				this.path.addAll(thisTurn);
-				queue.clear();
-				queue.add(new PositionContainer(currentTarget, 0));
-				this.openCount++;
-				hasVisited[currentTarget.row][currentTarget.col] = true;
-			} else {
+	/*
+	 * Visits the targets one leg at a time, each leg an A* (or, if greedy is
+	 * set, a greedy best-first) search to whichever target is reached first.
+	 */
+	private void visitTargets(GridSearch search, LinkedList<Position> targets, TargetHeuristic heuristic,
+			boolean greedy) {
+		search.setTargets(targets);
+		search.resetOpenCount();
+		int current = search.index(posRow, posCol);
+		search.incOpenCount();
+		while (search.getTargetCount() > 0) {
+			int currentTarget = greedy ? search.greedy(current, heuristic, GridSearch.ORDER_RLDU)
+					: search.astar(current, heuristic, GridSearch.ORDER_DLRU);
+			if (currentTarget < 0) {
 				this.pathFound = false;
 				break;
 			}
+			this.pathFound = true;
+			search.removeTarget(currentTarget);
+			heuristic.removeTarget(currentTarget);
+			this.pathLength += search.tracePath(currentTarget, this.path);
+			current = currentTarget;
+			search.incOpenCount();
 		}
+		this.openCount += search.getOpenCount();
 	}
 
 	public boolean comparePosition(Position p1, Position p2) {
@@ -609,37 +365,4 @@ public class Robot {
 		}
 		targets.remove(toRemove);
 	}
-	
-	public void compareCorner(Position p, HashSet<Position> set) {
-		if(comparePosition(p, new Position(0, 0))) {
-			set.remove(p);
-		}
-		if(comparePosition(p, new Position(0, env.getCols()-1))) {
-			set.remove(p);
-		}
-		if(comparePosition(p, new Position(env.getRows()-1, 0))) {
-			set.remove(p);
-		}
-		if(comparePosition(p, new Position(env.getRows()-1, env.getCols()-1))) {
-			set.remove(p);
-		}
-	}
-	
-	public int findDistanceToUnvisitedCorners(Position p, HashSet<Position> set) {
-		int count = 0;
-		for(Position p1: set) {
-			count += Math.abs(p.row - p1.row) + Math.abs(p.col - p1.col);
-		}
-		return count;
-	}
-}
-
-class PositionContainer {
-	public int distance;
-	public Position p;
-
-	public PositionContainer(Position p, int distance) {
-		this.p = p;
-		this.distance = distance;
-	}
 }
@@ -0,0 +1,294 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Runs the search algorithms side by side without the visualization, on every
+ * MapN.txt in the working directory and on synthetic square maps of the given
+ * sizes. Each algorithm is warmed up and then run repeatedly for a fixed
+ * amount of time; for every map and algorithm this prints
+ * - throughput (searches per second) and average latency of one search,
+ * - allocation rate and bytes allocated per search,
+ * - the number of states placed on open and the path length,
+ * - whether the path is legal: every move must stay on the map and off the
+ *   walls (Map6.txt, a single column, is there to catch moves mixed up
+ *   between rows and columns).
+ * For astar141516 it also prints the lower bound on the tour that the
+ * search recorded, and checks it against a spanning tree built the slow
+ * way and against the length of the path found.
+ * A search includes building the robot's search engine, but not parsing the
+ * map into an Environment. The "oracle" algorithm is bfs() answered from a
+ * DistanceOracle that is built once per map, outside the measured runs; its
+ * build time and memory are printed separately. Likewise, "hpa" shares one
+ * HierarchicalPlanner per map, whose build time is printed separately.
+ * Exits with status 1 if any path is illegal or any tour bound is wrong.
+ *
+ * Run from the project directory, e.g.
+ * java -Xmx4g -cp bin SearchBenchmark [-time ms] [-algorithms a,b] [-sizes 1000,4000]
+ * [-walls percent] [-oracleBudget MB]
+ */
+public class SearchBenchmark {
+	public static final String[] ALGORITHMS = { "bfs", "astar", "astar101112", "astar141516", "greedy", "oracle",
+			"jps", "hpa" };
+	private static final int SYNTHETIC_TARGETS = 8;
+	private static final int HPA_CLUSTER_SIZE = 16;
+
+	public static void main(String[] args) throws IOException {
+		long time = 1000;
+		String[] algorithms = ALGORITHMS;
+		int[] sizes = { 1000, 4000 };
+		int walls = 20;
+		long oracleBudget = 256L << 20;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-time": time = Long.parseLong(args[i + 1]); break;
+			case "-algorithms": algorithms = args[i + 1].split(","); break;
+			case "-sizes": sizes = parseSizes(args[i + 1]); break;
+			case "-walls": walls = Integer.parseInt(args[i + 1]); break;
+			case "-oracleBudget": oracleBudget = Long.parseLong(args[i + 1]) << 20; break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		System.out.printf("%-14s %-12s %10s %12s %10s %14s %10s %8s %7s%n", "map", "algorithm", "ops/s", "avg us/op",
+				"MB/s", "B/op", "open", "length", "check");
+		int failed = 0;
+		for (File file : mapFiles(new File("."))) {
+			Position robotPos = new Position(0, 0);
+			Environment env = MapLoader.load(file, robotPos);
+			failed += run(file.getName(), env, robotPos, algorithms, time, oracleBudget);
+		}
+		for (int size : sizes) {
+			Position robotPos = new Position(0, 0);
+			Environment env = new Environment(syntheticMap(size, SYNTHETIC_TARGETS, walls, size), robotPos);
+			failed += run("synthetic" + size, env, robotPos, algorithms, time, oracleBudget);
+		}
+		if (failed > 0) {
+			System.out.println(failed + " failed checks");
+			System.exit(1);
+		}
+	}
+
+	private static int[] parseSizes(String list) {
+		if (list.isEmpty() || list.equals("none")) {
+			return new int[0];
+		}
+		String[] parts = list.split(",");
+		int[] sizes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			sizes[i] = Integer.parseInt(parts[i]);
+		}
+		return sizes;
+	}
+
+	/* Returns the number of failed checks: illegal paths and wrong tour bounds. */
+	private static int run(String name, Environment env, Position robotPos, String[] algorithms, long time,
+			long oracleBudget) {
+		int failed = 0;
+		for (String algorithm : algorithms) {
+			DistanceOracle oracle = null;
+			if (algorithm.equals("oracle")) {
+				long start = System.nanoTime();
+				oracle = new DistanceOracle(new GridSearch(env), oracleBudget);
+				int skipped = oracle.addTargets(env.getTargets());
+				System.out.printf("%-14s oracle built in %.1f ms, %d targets, %.1f MB (%d over budget)%n", name,
+						(System.nanoTime() - start) / 1e6, oracle.getTargetCount(),
+						oracle.getMemoryBytes() / (double) (1 << 20), skipped);
+			}
+			HierarchicalPlanner planner = null;
+			if (algorithm.equals("hpa")) {
+				long start = System.nanoTime();
+				planner = new HierarchicalPlanner(new GridSearch(env), HPA_CLUSTER_SIZE);
+				System.out.printf("%-14s hpa built in %.1f ms, %d entrance nodes%n", name,
+						(System.nanoTime() - start) / 1e6, planner.getNodeCount());
+			}
+			// Warm-up, so the measured runs see compiled code.
+			measure(env, robotPos, algorithm, oracle, planner, time / 2);
+			Result result = measure(env, robotPos, algorithm, oracle, planner, time);
+			double seconds = result.nanos / 1e9;
+			boolean legal = isLegal(env, robotPos, result.robot);
+			if (!legal) {
+				failed++;
+			}
+			System.out.printf("%-14s %-12s %10.1f %12.1f %10s %14s %10d %8s %7s%n", name, algorithm, result.ops / seconds,
+					result.nanos / 1000.0 / result.ops,
+					result.bytes < 0 ? "n/a" : String.format("%.1f", result.bytes / seconds / (1 << 20)),
+					result.bytes < 0 ? "n/a" : Long.toString(result.bytes / result.ops), result.robot.getOpenCount(),
+					result.robot.getPathFound() ? Integer.toString(result.robot.getPathLength()) : "-",
+					legal ? "ok" : "ILLEGAL");
+			if (result.robot.getTourLowerBound() >= 0 && !checkTourBound(name, env, robotPos, result.robot)) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	/*
+	 * Checks the tour lower bound a robot recorded: it must equal the
+	 * distance from start to the nearest target plus a minimum spanning tree
+	 * of the targets, here built by Prim's algorithm over all pairs, and must
+	 * not exceed the length of a path that visits every target.
+	 */
+	private static boolean checkTourBound(String name, Environment env, Position start, Robot robot) {
+		Position[] targets = env.getTargets().toArray(new Position[0]);
+		int n = targets.length;
+		int nearest = Integer.MAX_VALUE;
+		for (Position target : targets) {
+			nearest = Math.min(nearest, distance(start, target));
+		}
+		int tree = 0;
+		boolean[] inTree = new boolean[n];
+		int[] cost = new int[n];
+		Arrays.fill(cost, Integer.MAX_VALUE);
+		cost[0] = 0;
+		for (int added = 0; added < n; added++) {
+			int next = -1;
+			for (int i = 0; i < n; i++) {
+				if (!inTree[i] && (next < 0 || cost[i] < cost[next])) {
+					next = i;
+				}
+			}
+			inTree[next] = true;
+			tree += cost[next];
+			for (int i = 0; i < n; i++) {
+				if (!inTree[i]) {
+					cost[i] = Math.min(cost[i], distance(targets[next], targets[i]));
+				}
+			}
+		}
+		int expected = nearest + tree;
+		int bound = robot.getTourLowerBound();
+		boolean ok = bound == expected && (!robot.getPathFound() || bound <= robot.getPathLength());
+		System.out.printf("%-14s tour bound %d (expected %d), path %s %7s%n", name, bound, expected,
+				robot.getPathFound() ? Integer.toString(robot.getPathLength()) : "-", ok ? "ok" : "WRONG");
+		return ok;
+	}
+
+	private static int distance(Position a, Position b) {
+		return Math.abs(a.row - b.row) + Math.abs(a.col - b.col);
+	}
+
+	/*
+	 * Whether every move of the robot's path, walked from start, stays on the
+	 * map and off the walls. Takes the robot's actions, so it must not be
+	 * simulated afterwards.
+	 */
+	public static boolean isLegal(Environment env, Position start, Robot robot) {
+		int row = start.row;
+		int col = start.col;
+		for (int i = 0; i < robot.getPathLength(); i++) {
+			switch (robot.getAction()) {
+			case MOVE_DOWN: row++; break;
+			case MOVE_UP: row--; break;
+			case MOVE_RIGHT: col++; break;
+			case MOVE_LEFT: col--; break;
+			default: break;
+			}
+			if (!env.validPos(row, col)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Runs searches back to back for at least time ms (and at least once). */
+	private static Result measure(Environment env, Position robotPos, String algorithm, DistanceOracle oracle,
+			HierarchicalPlanner planner, long time) {
+		Result result = new Result();
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + time * 1000000L;
+		long now;
+		do {
+			result.robot = new Robot(env, robotPos.row, robotPos.col);
+			result.robot.setDistanceOracle(oracle);
+			if (planner != null) {
+				result.robot.setHierarchicalPlanner(planner);
+			}
+			search(result.robot, algorithm);
+			result.ops++;
+			now = System.nanoTime();
+		} while (now < end);
+		result.nanos = now - start;
+		long bytesAfter = allocatedBytes();
+		result.bytes = bytesBefore < 0 ? -1 : bytesAfter - bytesBefore;
+		return result;
+	}
+
+	private static class Result {
+		Robot robot;
+		long ops;
+		long nanos;
+		long bytes;
+	}
+
+	/*
+	 * Bytes allocated so far by the current thread, as reported by HotSpot
+	 * (the same counter the JMH gc profiler reads), or -1 if unavailable.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	public static void search(Robot robot, String algorithm) {
+		switch (algorithm) {
+		case "bfs": robot.bfs(); break;
+		case "astar": robot.astar(); break;
+		case "astar101112": robot.astar101112(); break;
+		case "astar141516": robot.astar141516(); break;
+		case "greedy": robot.greedy(); break;
+		case "oracle": robot.bfs(); break;
+		case "jps": robot.jps(); break;
+		case "hpa": robot.hpa(); break;
+		default: throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+		}
+	}
+
+	/*
+	 * A size x size map with about walls percent walls (0 gives an open
+	 * room), the robot in the top left corner
+	 * and one target in the bottom right corner, plus further targets spread
+	 * at random. The same seed always gives the same map.
+	 */
+	public static LinkedList<String> syntheticMap(int size, int targets, int walls, long seed) {
+		Random random = new Random(seed);
+		char[][] tiles = new char[size][size];
+		for (char[] row : tiles) {
+			for (int col = 0; col < size; col++) {
+				row[col] = random.nextInt(100) < walls ? 'W' : 'C';
+			}
+		}
+		for (int i = 1; i < targets; i++) {
+			tiles[random.nextInt(size)][random.nextInt(size)] = 'T';
+		}
+		tiles[0][0] = 'R';
+		tiles[size - 1][size - 1] = 'T';
+		LinkedList<String> map = new LinkedList<>();
+		for (char[] row : tiles) {
+			map.add(new String(row));
+		}
+		return map;
+	}
+
+	/* Returns the MapN.txt files in dir, ordered by N. */
+	public static File[] mapFiles(File dir) {
+		File[] files = dir.listFiles((d, name) -> name.matches("Map\\d+\\.txt"));
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files, (a, b) -> Integer.compare(mapNumber(a), mapNumber(b)));
+		return files;
+	}
+
+	private static int mapNumber(File file) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring(3, name.length() - 4));
+	}
+}
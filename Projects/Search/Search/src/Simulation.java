@@ -0,0 +1,114 @@
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The rules of the simulation, without any display: at every time step each
+ * robot clears the target it stands on and then carries out its next action,
+ * unless that would walk into a wall or off the map. The simulation ends
+ * after a fixed number of steps, when all targets are cleared, or when no
+ * robot has a path to follow.
+ *
+ * EnvironmentPanel draws a simulation and steps it on a timer; BatchSimulation
+ * runs many of them as fast as possible.
+ */
+public class Simulation {
+	private final Environment env;
+	private final List<Robot> robots;
+	private final LinkedList<Position> targets;
+	private final int timestepsStop;
+	private int timesteps;
+
+	public Simulation(Environment env, List<Robot> robots, int timestepsStop) {
+		this.env = env;
+		this.robots = robots;
+		this.targets = env.getTargets();
+		// number of time steps before stopping simulation
+		this.timestepsStop = timestepsStop;
+		// number of time steps since the beginning
+		this.timesteps = -1; // -1 to account for displaying initial state.
+	}
+
+	/* Traditional Getters */
+	public Environment getEnvironment() { return env; }
+	public List<Robot> getRobots() { return robots; }
+	public int getTimesteps() { return timesteps; }
+	public int getTargetsLeft() { return targets.size(); }
+
+	/* Steps until the simulation is done and returns the number of steps. */
+	public int run() {
+		do {
+			updateEnvironment();
+		} while (!isDone());
+		return timesteps;
+	}
+
+	public boolean isDone() {
+		return timesteps == timestepsStop || goalConditionMet();
+	}
+
+	public boolean goalConditionMet() {
+		if (targets.isEmpty()) return true;
+		boolean temp = true;
+		for (Robot robot : robots) {
+			if (robot.getPathFound()) temp = false;
+		}
+		return temp;
+	}
+
+	private void remove(int row, int col) {
+		for (Iterator<Position> it = targets.iterator(); it.hasNext();) {
+			Position target = it.next();
+			if (target.row == row && target.col == col) {
+				it.remove();
+			}
+		}
+	}
+
+	// Gets the new state of the world after robot actions
+	public void updateEnvironment() {
+		timesteps++;
+		for(Robot robot : robots) {
+			Action action = robot.getAction();
+			int row = robot.getPosRow();
+			int col = robot.getPosCol();
+			remove(row, col);
+			switch(action) {
+			case MOVE_DOWN:
+				if (env.validPos(row+1, col))
+					robot.incPosRow();
+				break;
+			case MOVE_LEFT:
+				if (env.validPos(row, col-1))
+					robot.decPosCol();
+				break;
+			case MOVE_RIGHT:
+				if (env.validPos(row, col+1))
+					robot.incPosCol();
+				break;
+			case MOVE_UP:
+				if (env.validPos(row-1, col))
+					robot.decPosRow();
+				break;
+			case DO_NOTHING: // pass to default
+			default:
+				break;
+			}
+		}
+	}
+
+	public void printPerformanceMeasure() {
+		System.out.println("A solution has been found in: " + timesteps + " steps.");
+		int num = 0;
+		for(Robot robot : robots) {
+			if (robot.getPathFound()) {
+				System.out.println("Robot " + num + " found a path to the goal state in: " + robot.getPathLength() + " steps.");
+				System.out.println("Robot " + num + " search placed on open: " + robot.getOpenCount() + " states.");
+			} else {
+				System.out.println("Robot " + num + " did not find a path to the goal state.");
+				System.out.println("Robot " + num + " search placed on open: " + robot.getOpenCount() + " states.");
+			}
+			num++;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+/**
+ * A heuristic for searches that may stop at any of several targets. The
+ * search asks for the estimate of a cell once, when the cell is first placed
+ * on open, and keeps the value as part of the cell's key, so implementations
+ * may do real work per call but must not depend on the order of calls.
+ *
+ * Estimates must never overestimate the remaining cost, or the searches lose
+ * their shortest-path guarantee.
+ */
+public interface TargetHeuristic {
+	/* Returns a lower bound on the remaining cost from cell. */
+	int estimate(int cell);
+
+	/* Called once a target has been reached and no longer needs a visit. */
+	void removeTarget(int cell);
+}
@@ -2,11 +2,9 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -32,23 +30,15 @@ public class VisualizeSimulation extends JFrame {
 	 */
 	public VisualizeSimulation() {
 		// TODO: change the following to run the simulation on different maps.
+		// Text maps (MapN.txt) and binary maps written by MapLoader both load.
 		String filename = "Map14.txt";
-		LinkedList<String> map = new LinkedList<>();
-	    try {
-			File inputFile = new File(filename);
-			FileReader fileReader = new FileReader(inputFile); 
-			BufferedReader bufferedReader = new BufferedReader(fileReader); 
-			String line;
-			while ((line = bufferedReader.readLine()) != null) {
-				map.add(line);
-			}
-	    	fileReader.close();
-	    } catch (Exception exception) {
-	    	System.out.println(exception);
-	    }	
-		
 	    Position robotPos = new Position(0,0); // Modify for multiple robots MIW
-		Environment env = new Environment(map, robotPos); // Modify for multiple robots MIW
+		Environment env;
+	    try {
+			env = MapLoader.load(new File(filename), robotPos); // Modify for multiple robots MIW
+	    } catch (IOException exception) {
+	    	throw new IllegalStateException("Cannot load " + filename, exception);
+	    }
 		Robot robot = new Robot(env, robotPos.row, robotPos.col);
 		// TODO: Change the following to the search algorithm you are testing.
 		//robot.bfs();
@@ -71,13 +61,16 @@ public class VisualizeSimulation extends JFrame {
     }
 }
 
+/*
+ * Draws a Simulation and advances it one step every timeStepSpeed ms. The
+ * simulation itself does not need the panel; see BatchSimulation.
+ */
 @SuppressWarnings("serial")
 class EnvironmentPanel extends JPanel{
 	private Timer timer;
 	private Environment env;
 	private ArrayList<Robot> robots;
-	private LinkedList<Position> targets;
-	private int timesteps, timestepsStop;
+	private Simulation simulation;
 	//TODO: Change TILESIZE if you want to enlarge the visualization.
 	public static final int TILESIZE = 50;
 	//TODO: Change the timeStepSpeed to speed-up or slow down the animation.
@@ -88,87 +81,15 @@ class EnvironmentPanel extends JPanel{
 	    setPreferredSize(new Dimension(env.getCols()*TILESIZE, env.getRows()*TILESIZE));
 		this.env = env;
 		this.robots = robots;
-		// number of time steps since the beginning
-		this.timesteps = -1; // -1 to account for displaying initial state.
-		// number of time steps before stopping simulation
-		this.timestepsStop = 200;
-		this.targets = env.getTargets();
+		this.simulation = new Simulation(env, robots, 200);
 		
 		this.timer = new Timer(timeStepSpeed, new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				updateEnvironment();
+				simulation.updateEnvironment();
 				repaint();
-				if (timesteps == timestepsStop) {
-					timer.stop();
-					printPerformanceMeasure();
-				}
-				if (goalConditionMet()) {
+				if (simulation.isDone()) {
 					timer.stop();
-					printPerformanceMeasure();
-				}
-			}
-			
-			public void printPerformanceMeasure() {
-				System.out.println("A solution has been found in: " + timesteps + " steps.");
-				int num = 0;
-				for(Robot robot : robots) {
-					if (robot.getPathFound()) {
-						System.out.println("Robot " + num + " found a path to the goal state in: " + robot.getPathLength() + " steps.");
-						System.out.println("Robot " + num + " search placed on open: " + robot.getOpenCount() + " states.");		
-					} else {
-						System.out.println("Robot " + num + " did not find a path to the goal state.");
-						System.out.println("Robot " + num + " search placed on open: " + robot.getOpenCount() + " states.");	
-					}
-					num++;
-				}
-			}
-			
-			public boolean goalConditionMet() {
-				if (targets.isEmpty()) return true;
-				boolean temp = true;
-				for (Robot robot : robots) {
-					if (robot.getPathFound()) temp = false;
-				}	
-				return temp;
-			}
-			
-			public void remove(int row, int col) {
-				for (int i = 0; i < targets.size(); i++) {
-					if (targets.get(i).row == row && targets.get(i).col == col) {
-						targets.remove(i);
-					}
-				}
-			}
-
-			// Gets the new state of the world after robot actions
-			public void updateEnvironment() {
-				timesteps++;
-				for(Robot robot : robots) {
-					Action action = robot.getAction();
-					int row = robot.getPosRow();
-					int col = robot.getPosCol();
-					remove(row, col);
-					switch(action) {
-		            case MOVE_DOWN:
-		                if (env.validPos(row+1, col))
-		                    robot.incPosRow();
-		                break;
-		            case MOVE_LEFT:
-		                if (env.validPos(row, col-1))
-		                    robot.decPosCol();
-		                break;
-		            case MOVE_RIGHT:
-		                if (env.validPos(row, col+1))
-		                    robot.incPosCol();
-		                break;
-		            case MOVE_UP:
-		                if (env.validPos(row-1, col))
-		                    robot.decPosRow();
-		                break;
-		            case DO_NOTHING: // pass to default
-		            default:
-		                break;
-					}
+					simulation.printPerformanceMeasure();
 				}
 			}
 		});
@@ -0,0 +1,234 @@
+import java.util.Arrays;
+
+/**
+ * Solves Sudoku as an exact cover problem with Knuth's Algorithm X on
+ * Dancing Links. Every candidate (cell, value) is a row of the matrix that
+ * covers four columns: the cell is filled, and the value appears in the
+ * cell's row, column and box. A solution is a set of rows covering every
+ * column exactly once.
+ *
+ * The matrix is a pool of nodes in parallel int arrays (left, right, up,
+ * down, column) rather than node objects: index 0 is the root, the column
+ * headers follow, and then four nodes per candidate. It is built once per
+ * board size; load takes back the previous puzzle by uncovering in reverse,
+ * so the same instance solves any number of puzzles.
+ *
+ * Cells are numbered row by row, cell = row * boardSize + column, and values
+ * run from 1 to boardSize; 0 marks an empty cell.
+ */
+public class DancingLinks {
+	private final int boardSize;
+	private final int partitionSize;
+	private final int cells;
+	private final int columns;
+
+	private final int[] left;
+	private final int[] right;
+	private final int[] up;
+	private final int[] down;
+	private final int[] column;
+	private final int[] size; // nodes left in each column
+	private final int[] candidate; // candidate of each node, cell * boardSize + value - 1
+	private final boolean[] covered;
+
+	// Rows selected so far, givens first, then the search's choices.
+	private final int[] selected;
+	private int depth;
+
+	private long nodes;
+	private long backtracks;
+
+	public DancingLinks(int boardSize) {
+		int partitionSize = (int) Math.sqrt(boardSize);
+		if (partitionSize * partitionSize != boardSize || boardSize < 1) {
+			throw new IllegalArgumentException("Unsupported board size: " + boardSize);
+		}
+		this.boardSize = boardSize;
+		this.partitionSize = partitionSize;
+		this.cells = boardSize * boardSize;
+		this.columns = 4 * cells;
+		int candidates = cells * boardSize;
+		int total = 1 + columns + 4 * candidates;
+		this.left = new int[total];
+		this.right = new int[total];
+		this.up = new int[total];
+		this.down = new int[total];
+		this.column = new int[total];
+		this.size = new int[columns + 1];
+		this.candidate = new int[total];
+		this.covered = new boolean[columns + 1];
+		this.selected = new int[cells];
+		build();
+	}
+
+	/* Traditional Getters */
+	public int getBoardSize() { return boardSize; }
+	public long getNodes() { return nodes; }
+	public long getBacktracks() { return backtracks; }
+	public boolean isSolved() { return right[0] == 0; }
+
+	private void build() {
+		for (int c = 0; c <= columns; c++) {
+			left[c] = c == 0 ? columns : c - 1;
+			right[c] = c == columns ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+		}
+		int node = columns + 1;
+		for (int cell = 0; cell < cells; cell++) {
+			int row = cell / boardSize;
+			int col = cell % boardSize;
+			int box = row / partitionSize * partitionSize + col / partitionSize;
+			for (int v = 0; v < boardSize; v++) {
+				int first = node;
+				addNode(node++, 1 + cell, first);
+				addNode(node++, 1 + cells + row * boardSize + v, first);
+				addNode(node++, 1 + 2 * cells + col * boardSize + v, first);
+				addNode(node++, 1 + 3 * cells + box * boardSize + v, first);
+				for (int i = first; i < node; i++) {
+					candidate[i] = cell * boardSize + v;
+				}
+			}
+		}
+	}
+
+	/* Appends node to the bottom of column c and to the row starting at first. */
+	private void addNode(int node, int c, int first) {
+		column[node] = c;
+		up[node] = up[c];
+		down[node] = c;
+		down[up[c]] = node;
+		up[c] = node;
+		size[c]++;
+		if (node == first) {
+			left[node] = node;
+			right[node] = node;
+		} else {
+			left[node] = left[first];
+			right[node] = first;
+			right[left[first]] = node;
+			left[first] = node;
+		}
+	}
+
+	private void cover(int c) {
+		covered[c] = true;
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for (int i = down[c]; i != c; i = down[i]) {
+			for (int j = right[i]; j != i; j = right[j]) {
+				up[down[j]] = up[j];
+				down[up[j]] = down[j];
+				size[column[j]]--;
+			}
+		}
+	}
+
+	private void uncover(int c) {
+		for (int i = up[c]; i != c; i = up[i]) {
+			for (int j = left[i]; j != i; j = left[j]) {
+				size[column[j]]++;
+				up[down[j]] = j;
+				down[up[j]] = j;
+			}
+		}
+		right[left[c]] = c;
+		left[right[c]] = c;
+		covered[c] = false;
+	}
+
+	/* Covers the other columns of the row of node, after its own column. */
+	private void coverRow(int node) {
+		for (int j = right[node]; j != node; j = right[j]) {
+			cover(column[j]);
+		}
+	}
+
+	private void uncoverRow(int node) {
+		for (int j = left[node]; j != node; j = left[j]) {
+			uncover(column[j]);
+		}
+	}
+
+	/**
+	 * Sets up a new puzzle, vals[row][column] being 0 for empty cells, and
+	 * selects the rows of the givens.
+	 *
+	 * @return false if the givens contradict each other
+	 */
+	public boolean load(int[][] vals) {
+		while (depth > 0) {
+			int node = selected[--depth];
+			uncoverRow(node);
+			uncover(column[node]);
+		}
+		nodes = 0;
+		backtracks = 0;
+		for (int row = 0; row < boardSize; row++) {
+			for (int col = 0; col < boardSize; col++) {
+				int v = vals[row][col];
+				if (v == 0) {
+					continue;
+				}
+				int node = columns + 1 + 4 * ((row * boardSize + col) * boardSize + v - 1);
+				for (int i = 0; i < 4; i++) {
+					if (covered[column[node + i]]) {
+						return false;
+					}
+				}
+				cover(column[node]);
+				coverRow(node);
+				selected[depth++] = node;
+			}
+		}
+		return true;
+	}
+
+	/* Writes the selected values into vals; empty cells are written as 0. */
+	public void copyTo(int[][] vals) {
+		for (int[] row : vals) {
+			Arrays.fill(row, 0);
+		}
+		for (int i = 0; i < depth; i++) {
+			int cell = candidate[selected[i]] / boardSize;
+			vals[cell / boardSize][cell % boardSize] = candidate[selected[i]] % boardSize + 1;
+		}
+	}
+
+	/**
+	 * Searches for a solution of the loaded puzzle, always branching on the
+	 * column with the fewest rows left. Each row tried counts as a node and
+	 * each row taken back as a backtrack.
+	 *
+	 * @return false if there is none
+	 */
+	public boolean solve() {
+		if (right[0] == 0) {
+			return true;
+		}
+		int c = right[0];
+		for (int j = right[c]; j != 0 && size[c] > 0; j = right[j]) {
+			if (size[j] < size[c]) {
+				c = j;
+			}
+		}
+		if (size[c] == 0) {
+			return false;
+		}
+		cover(c);
+		for (int r = down[c]; r != c; r = down[r]) {
+			nodes++;
+			selected[depth++] = r;
+			coverRow(r);
+			if (solve()) {
+				return true;
+			}
+			uncoverRow(r);
+			depth--;
+			backtracks++;
+		}
+		uncover(c);
+		return false;
+	}
+}
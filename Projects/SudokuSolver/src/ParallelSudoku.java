@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Searches a Sudoku on all cores. The top splitDepth levels of the search
+ * tree are split into ForkJoinPool tasks, one per value tried, each on its
+ * own copy of the board; below that a task searches its subtree with a
+ * SudokuEngine on its own, and idle workers steal pending subtrees.
+ *
+ * solve stops every task once one of them has found a solution; the tasks
+ * share a stop flag that the engines check before every value they try.
+ * countSolutions adds up the solutions of all subtrees, e.g. with a limit
+ * of 2 to check that a puzzle has a unique solution.
+ *
+ * Nothing here touches the static state of Sudoku, so several puzzles may be
+ * solved at once.
+ */
+public class ParallelSudoku {
+	private final ForkJoinPool pool;
+	private final int splitDepth;
+	private final LongAdder nodes = new LongAdder();
+
+	public ParallelSudoku(int parallelism, int splitDepth) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.splitDepth = splitDepth;
+	}
+
+	/* Traditional Getters */
+	public int getParallelism() { return pool.getParallelism(); }
+	public int getSplitDepth() { return splitDepth; }
+	/* Values tried by all tasks of the last solve or count. */
+	public long getNodes() { return nodes.sum(); }
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Solves the puzzle in vals (0 for empty cells) and writes the solution
+	 * into vals.
+	 *
+	 * @return false if there is none, leaving vals as it was
+	 */
+	public boolean solve(int[][] vals) {
+		nodes.reset();
+		SudokuEngine engine = new SudokuEngine(vals.length);
+		if (!engine.load(vals)) {
+			return false;
+		}
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<SudokuEngine> solution = new AtomicReference<>();
+		engine.setStop(stop);
+		pool.invoke(new Search(engine, 0, stop, solution, null, 1));
+		if (solution.get() == null) {
+			return false;
+		}
+		solution.get().copyTo(vals);
+		return true;
+	}
+
+	/**
+	 * Counts the solutions of the puzzle in vals, stopping at limit.
+	 */
+	public long countSolutions(int[][] vals, long limit) {
+		nodes.reset();
+		SudokuEngine engine = new SudokuEngine(vals.length);
+		if (!engine.load(vals)) {
+			return 0;
+		}
+		AtomicBoolean stop = new AtomicBoolean();
+		engine.setStop(stop);
+		AtomicLong total = new AtomicLong();
+		pool.invoke(new Search(engine, 0, stop, null, total, limit));
+		return Math.min(limit, total.get());
+	}
+
+	/*
+	 * Searches the subtree below engine's board. With a solution reference it
+	 * looks for one solution and stores the first one found; otherwise it
+	 * adds the solutions it counts to total, and everything stops once
+	 * total reaches limit.
+	 */
+	@SuppressWarnings("serial")
+	private class Search extends RecursiveAction {
+		private final SudokuEngine engine;
+		private final int depth;
+		private final AtomicBoolean stop;
+		private final AtomicReference<SudokuEngine> solution;
+		private final AtomicLong total;
+		private final long limit;
+
+		Search(SudokuEngine engine, int depth, AtomicBoolean stop, AtomicReference<SudokuEngine> solution,
+				AtomicLong total, long limit) {
+			this.engine = engine;
+			this.depth = depth;
+			this.stop = stop;
+			this.solution = solution;
+			this.total = total;
+			this.limit = limit;
+		}
+
+		@Override
+		protected void compute() {
+			if (stop.get()) {
+				return;
+			}
+			if (depth >= splitDepth || engine.isSolved()) {
+				searchHere();
+				return;
+			}
+			int[] values = new int[engine.getBoardSize()];
+			int cell = engine.branch(values);
+			List<Search> children = new ArrayList<>();
+			for (int v : values) {
+				if (v == 0) {
+					break;
+				}
+				nodes.increment();
+				SudokuEngine child = new SudokuEngine(engine);
+				if (child.assign(cell, v)) {
+					children.add(new Search(child, depth + 1, stop, solution, total, limit));
+				}
+			}
+			invokeAll(children);
+		}
+
+		private void searchHere() {
+			if (solution != null) {
+				if (engine.solve() && solution.compareAndSet(null, engine)) {
+					stop.set(true);
+				}
+			} else if (total.addAndGet(engine.countSolutions(limit)) >= limit) {
+				stop.set(true);
+			}
+			nodes.add(engine.getNodes());
+		}
+	}
+}
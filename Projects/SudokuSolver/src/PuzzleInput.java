@@ -0,0 +1,239 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads puzzles from a file of bytes, without Scanner, Strings or regular
+ * expressions: the bytes are read through a channel into one reused buffer
+ * and the numbers are parsed by hand, straight into a flat board (cells
+ * numbered row by row, 0 for an empty cell). Any size of file can be read,
+ * as only the buffer is held in memory.
+ *
+ * A file may hold any mix of
+ * - puzzles in the format Sudoku reads: the board size on a line of its
+ *   own, then the values, separated by whitespace,
+ * - one puzzle per line: 81 characters for a 9x9 board, '.' or '0' for an
+ *   empty cell, or boardSize * boardSize numbers separated by spaces or
+ *   commas.
+ * Blank lines and lines starting with '#' are skipped. Malformed input is
+ * reported with an IllegalArgumentException giving the line.
+ */
+public class PuzzleInput implements Closeable {
+	private static final int END = -1;
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+	private int position;
+	private int limit;
+	private int lineNumber = 1;
+	// Values of the puzzle being read, before its size is known.
+	private int[] values = new int[81];
+
+	public PuzzleInput(File file) throws IOException {
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+	}
+
+	public PuzzleInput(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(1 << 16);
+		this.bytes = buffer.array();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/* The next byte without consuming it, or END at the end of the input. */
+	private int peek() throws IOException {
+		if (position == limit) {
+			buffer.clear();
+			int read;
+			do {
+				read = channel.read(buffer);
+			} while (read == 0);
+			if (read < 0) {
+				return END;
+			}
+			position = 0;
+			limit = read;
+		}
+		return bytes[position] & 0xFF;
+	}
+
+	private int read() throws IOException {
+		int b = peek();
+		if (b != END) {
+			position++;
+			if (b == '\n') {
+				lineNumber++;
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Reads the next puzzle as a flat board; its board size is the square
+	 * root of its length.
+	 *
+	 * @return null at the end of the input
+	 */
+	public int[] next() throws IOException {
+		int b;
+		while (true) {
+			b = skipSpaces();
+			if (b == '\r' || b == '\n') {
+				read();
+			} else if (b == '#') {
+				skipLine();
+			} else {
+				break;
+			}
+		}
+		if (b == END) {
+			return null;
+		}
+		// A first token of one or two digits alone on its line is the board
+		// size of a puzzle in Sudoku's format; a longer one is a puzzle in
+		// characters; otherwise the line is a puzzle of numbers.
+		int count = 0;
+		int digits = 0;
+		int first = 0;
+		while ((b = peek()) >= '0' && b <= '9' || b == '.') {
+			read();
+			int v = b == '.' ? 0 : b - '0';
+			if (digits < 2) {
+				first = first * 10 + v;
+			}
+			if (b == '.') {
+				digits = 3;
+			}
+			add(count++, v);
+			digits++;
+		}
+		if (digits == 0) {
+			throw error("Unexpected character '" + (char) b + "'");
+		}
+		b = skipSpaces();
+		if (digits > 2) {
+			if (b != '\r' && b != '\n' && b != END) {
+				throw error("Unexpected character '" + (char) b + "'");
+			}
+			int boardSize = boardSize(count);
+			if (boardSize > 9) {
+				throw error("Puzzles in characters must be 9x9");
+			}
+			return board(count, boardSize);
+		}
+		if (b == '\r' || b == '\n' || b == END) {
+			return readBlock(first);
+		}
+		values[0] = first;
+		count = 1;
+		while (b != '\r' && b != '\n' && b != END) {
+			if (b == ',') {
+				read();
+				b = skipSpaces();
+			}
+			add(count++, readNumber());
+			b = skipSpaces();
+		}
+		return board(count, boardSize(count));
+	}
+
+	/* The values after a board size line, as Sudoku's format has them. */
+	private int[] readBlock(int boardSize) throws IOException {
+		int cells = boardSize * boardSize;
+		boardSize(cells);
+		int[] board = new int[cells];
+		for (int cell = 0; cell < cells; cell++) {
+			int b;
+			while ((b = peek()) == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				read();
+			}
+			if (b == END) {
+				throw error("Expected " + cells + " values, found " + cell);
+			}
+			board[cell] = value(readNumber(), boardSize);
+		}
+		return board;
+	}
+
+	private int readNumber() throws IOException {
+		int b = peek();
+		if (b < '0' || b > '9') {
+			throw error(b == END ? "Unexpected end of input" : "Unexpected character '" + (char) b + "'");
+		}
+		int number = 0;
+		while ((b = peek()) >= '0' && b <= '9') {
+			read();
+			number = number * 10 + b - '0';
+			if (number > 64) {
+				throw error("Value out of range");
+			}
+		}
+		return number;
+	}
+
+	/* Skips spaces and tabs and returns the byte after them. */
+	private int skipSpaces() throws IOException {
+		int b;
+		while ((b = peek()) == ' ' || b == '\t') {
+			read();
+		}
+		return b;
+	}
+
+	private void skipLine() throws IOException {
+		int b;
+		do {
+			b = read();
+		} while (b != '\n' && b != END);
+	}
+
+	private void add(int index, int v) {
+		if (index == values.length) {
+			if (index == 64 * 64) {
+				throw error("More than " + index + " values");
+			}
+			values = Arrays.copyOf(values, Math.min(2 * index, 64 * 64));
+		}
+		values[index] = v;
+	}
+
+	private int[] board(int count, int boardSize) {
+		int[] board = new int[count];
+		for (int cell = 0; cell < count; cell++) {
+			board[cell] = value(values[cell], boardSize);
+		}
+		return board;
+	}
+
+	/* The board size of a puzzle with the given number of cells. */
+	private int boardSize(int cells) {
+		int boardSize = (int) Math.round(Math.sqrt(cells));
+		int partitionSize = (int) Math.round(Math.sqrt(boardSize));
+		if (boardSize * boardSize != cells || partitionSize * partitionSize != boardSize || boardSize > 64
+				|| boardSize < 1) {
+			throw error("Not a Sudoku board: " + cells + " cells");
+		}
+		return boardSize;
+	}
+
+	private int value(int v, int boardSize) {
+		if (v > boardSize) {
+			throw error("Value " + v + " out of range for a " + boardSize + "x" + boardSize + " board");
+		}
+		return v;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Line " + lineNumber + ": " + message);
+	}
+}
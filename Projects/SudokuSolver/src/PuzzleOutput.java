@@ -0,0 +1,123 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes boards as ASCII through one reused byte buffer: numbers are
+ * formatted digit by digit straight into the buffer, with no Strings or
+ * concatenation per value, and the buffer goes to the stream whenever it
+ * fills up.
+ */
+public class PuzzleOutput implements Closeable, Flushable {
+	private final OutputStream out;
+	private final byte[] buffer = new byte[1 << 16];
+	private int size;
+
+	public PuzzleOutput(File file) throws IOException {
+		this(new FileOutputStream(file));
+	}
+
+	public PuzzleOutput(OutputStream out) {
+		this.out = out;
+	}
+
+	public PuzzleOutput write(char c) throws IOException {
+		if (size == buffer.length) {
+			flushBuffer();
+		}
+		buffer[size++] = (byte) c;
+		return this;
+	}
+
+	public PuzzleOutput write(String ascii) throws IOException {
+		for (int i = 0; i < ascii.length(); i++) {
+			write(ascii.charAt(i));
+		}
+		return this;
+	}
+
+	public PuzzleOutput write(int n) throws IOException {
+		return write(n, 0);
+	}
+
+	/* Writes n right-aligned in width characters, like printf("%3d"). */
+	public PuzzleOutput write(int n, int width) throws IOException {
+		if (size + 12 + width > buffer.length) {
+			flushBuffer();
+		}
+		long value = n;
+		if (value < 0) {
+			value = -value;
+		}
+		int digits = 1;
+		for (long rest = value / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+		int length = digits + (n < 0 ? 1 : 0);
+		for (int i = length; i < width; i++) {
+			buffer[size++] = ' ';
+		}
+		if (n < 0) {
+			buffer[size++] = '-';
+		}
+		size += digits;
+		int at = size;
+		do {
+			buffer[--at] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		return this;
+	}
+
+	/*
+	 * Writes a board as Sudoku writes its solution files: every value
+	 * followed by a space, one row per line.
+	 */
+	public void writeGrid(int[] board, int boardSize) throws IOException {
+		for (int cell = 0; cell < board.length; cell++) {
+			write(board[cell]).write(' ');
+			if (cell % boardSize == boardSize - 1) {
+				write('\n');
+			}
+		}
+	}
+
+	/*
+	 * Writes a board on one line: as characters if it is 9x9, otherwise as
+	 * numbers separated by spaces.
+	 */
+	public void writeLine(int[] board) throws IOException {
+		boolean characters = board.length <= 81;
+		for (int cell = 0; cell < board.length; cell++) {
+			if (characters) {
+				write((char) ('0' + board[cell]));
+			} else {
+				if (cell > 0) {
+					write(' ');
+				}
+				write(board[cell]);
+			}
+		}
+		write('\n');
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, size);
+		size = 0;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+}
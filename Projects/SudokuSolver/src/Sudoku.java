@@ -1,80 +1,114 @@
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Scanner;
 
 public class Sudoku {
 
 	private static int boardSize = 0;
 	private static int partitionSize = 0;
 	private static HashMap<Integer, Variable> indexMap = new HashMap<Integer, Variable>();
+	// Values tried and values taken back by the last search.
+	private static long nodes = 0;
+	private static long backtracks = 0;
 
 	public static void main(String[] args) {
 		
 		String filename = args[0];
-		File inputFile = new File(filename);
-		Scanner input = null;
+		// Options after the file name: -legacy, -dlx, -order static|mrv|degree, -values ascending|lcv,
+		// -parallel threads, -count limit|all, -propagation fc|ac3|singles|pairs
+		boolean legacy = false;
+		boolean dlx = false;
+		int threads = 0;
+		long countLimit = 0;
+		SudokuEngine.VariableOrder variableOrder = SudokuEngine.VariableOrder.MRV_DEGREE;
+		SudokuEngine.ValueOrder valueOrder = SudokuEngine.ValueOrder.LEAST_CONSTRAINING;
+		SudokuEngine.Propagation propagation = SudokuEngine.Propagation.SINGLES;
+		for (int a = 1; a < args.length; a++) {
+			if (args[a].equals("-legacy")) {
+				legacy = true;
+			} else if (args[a].equals("-dlx")) {
+				dlx = true;
+			} else if (args[a].equals("-order") && a + 1 < args.length) {
+				String order = args[++a];
+				variableOrder = order.equals("static") ? SudokuEngine.VariableOrder.STATIC
+						: order.equals("mrv") ? SudokuEngine.VariableOrder.MRV : SudokuEngine.VariableOrder.MRV_DEGREE;
+			} else if (args[a].equals("-parallel") && a + 1 < args.length) {
+				threads = Integer.parseInt(args[++a]);
+			} else if (args[a].equals("-count") && a + 1 < args.length) {
+				String limit = args[++a];
+				countLimit = limit.equals("all") ? Long.MAX_VALUE : Long.parseLong(limit);
+			} else if (args[a].equals("-values") && a + 1 < args.length) {
+				valueOrder = args[++a].equals("ascending") ? SudokuEngine.ValueOrder.ASCENDING
+						: SudokuEngine.ValueOrder.LEAST_CONSTRAINING;
+			} else if (args[a].equals("-propagation") && a + 1 < args.length) {
+				String level = args[++a];
+				propagation = level.equals("fc") ? SudokuEngine.Propagation.FORWARD_CHECKING
+						: level.equals("ac3") ? SudokuEngine.Propagation.ARC_CONSISTENCY
+						: level.equals("pairs") ? SudokuEngine.Propagation.PAIRS : SudokuEngine.Propagation.SINGLES;
+			}
+		}
 		int[][] vals = null;
 		ArrayList<Variable> vars = new ArrayList<Variable>();
 
-		int temp = 0;
-		int count = 0;
-
-		try {
-			input = new Scanner(inputFile);
-			temp = input.nextInt();
-			boardSize = temp;
-			partitionSize = (int) Math.sqrt(boardSize);
-			System.out.println("Boardsize: " + temp + "x" + temp);
-			vals = new int[boardSize][boardSize];
-
-			System.out.println("Input:");
-			int i = 0;
-			int j = 0;
-			int index = 0;
-			while (input.hasNext()) {
-				temp = input.nextInt();
-				count++;
-				System.out.printf("%3d", temp);
+		long parseStart = System.nanoTime();
+		int[] board = null;
+		try (PuzzleInput input = new PuzzleInput(new File(filename))) {
+			board = input.next();
+			if (board != null && input.next() != null) {
+				board = null;
+			}
+		} catch (IOException exception) {
+			System.out.println("Input file not found: " + filename);
+		}
+		if (board == null)
+			throw new RuntimeException("Incorrect number of inputs.");
+		boardSize = (int) Math.sqrt(board.length);
+		partitionSize = (int) Math.sqrt(boardSize);
+		vals = new int[boardSize][boardSize];
+		for (int i = 0; i < boardSize; i++) {
+			for (int j = 0; j < boardSize; j++) {
+				int temp = board[i * boardSize + j];
 				vals[i][j] = temp;
 				if (temp == 0) {
 					Variable v = new Variable(i, j);
 					vars.add(v);
-					index++;
 					indexMap.put(i*partitionSize + j, v);
 				}
-				j++;
-				if (j == boardSize) {
-					j = 0;
-					i++;
-					System.out.println();
-				}
-				if (j == boardSize) {
-					break;
-				}
 			}
-			input.close();
-		} catch (FileNotFoundException exception) {
-			System.out.println("Input file not found: " + filename);
 		}
-		if (count != boardSize * boardSize)
-			throw new RuntimeException("Incorrect number of inputs.");
+		long parseTime = System.nanoTime() - parseStart;
+
+		PuzzleOutput console = new PuzzleOutput(System.out);
+		try {
+			console.write("Boardsize: ").write(boardSize).write('x').write(boardSize).write('\n');
+			console.write("Input:\n");
+			writeTable(console, board);
+			console.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
 		long startTime = System.currentTimeMillis();
 		
-		initiateDomains(vars, vals);
-		solve(vars, vals);
+		if (legacy) {
+			initiateDomains(vars, vals);
+			solve(vars, vals);
+		} else if (dlx) {
+			solveDancingLinks(vars, vals);
+		} else if (threads > 0 || countLimit > 0) {
+			solveParallel(vars, vals, Math.max(threads, 1), countLimit);
+		} else {
+			solveBitset(vars, vals, variableOrder, valueOrder, propagation);
+		}
 		
 		long endTime = System.currentTimeMillis();
 
 		long duration = (endTime - startTime);  
 		
 		System.out.println("Duration: " + duration);
+		System.out.println("Nodes: " + nodes + " Backtracks: " + backtracks);
 		Boolean bol = true;
 		for(Variable v: vars) {
 			bol &= checkSingle(v, vals);
@@ -83,45 +117,139 @@ public class Sudoku {
 			}
 		}
 		System.out.println(bol);
-		BufferedWriter writer;
-		try {
-			writer = new BufferedWriter(new FileWriter("./"
-			//writer = new BufferedWriter(new FileWriter("C:/Users/Administrator/Documents/CSSE413/"
-					+ filename.substring(0, filename.length() - 4) + "Solution.txt"));
-			writerMA(writer, done(vars), vals);
+		for (int i = 0; i < boardSize; i++) {
+			System.arraycopy(vals[i], 0, board, i * boardSize, boardSize);
+		}
+		long writeStart = System.nanoTime();
+		try (PuzzleOutput writer = new PuzzleOutput(new File("./"
+				+ filename.substring(0, filename.length() - 4) + "Solution.txt"))) {
+			if (done(vars)) {
+				writer.writeGrid(board, boardSize);
+			} else {
+				writer.write("-1");
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		long writeTime = System.nanoTime() - writeStart;
+		System.out.printf("Parse: %.3f ms Write: %.3f ms%n", parseTime / 1e6, writeTime / 1e6);
 		// Output
 		if (!done(vars)) {
 			System.out.println("No solution found.");
 			return;
 		}
 		System.out.println("\nOutput\n");
-		for (int i = 0; i < boardSize; i++) {
-			for (int j = 0; j < boardSize; j++) {
-				System.out.printf("%3d", vals[i][j]);
-			}
-			System.out.println();
+		try {
+			writeTable(console, board);
+			console.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 		
 	}
 
-	private static void writerMA(BufferedWriter writer, boolean done, int[][] vals) throws IOException {
-		if (done) {
-			for (int i = 0; i < vals.length; i++) {
-				for (int j = 0; j < vals.length; j++) {
-					writer.write(vals[i][j] + " ");
+	/* Prints a board with every value in 3 columns, one row per line. */
+	private static void writeTable(PuzzleOutput out, int[] board) throws IOException {
+		for (int cell = 0; cell < board.length; cell++) {
+			out.write(board[cell], 3);
+			if (cell % boardSize == boardSize - 1) {
+				out.write('\n');
+			}
+		}
+	}
+
+	/*
+	 * Solves with the bitmask engine and copies the solution, if any, into
+	 * vals and the variables. Much faster than solve() on the 16x16 and
+	 * larger boards; pass -legacy after the file name to use solve().
+	 */
+	public static void solveBitset(ArrayList<Variable> vars, int[][] vals, SudokuEngine.VariableOrder variableOrder,
+			SudokuEngine.ValueOrder valueOrder, SudokuEngine.Propagation propagation) {
+		SudokuEngine engine = new SudokuEngine(boardSize);
+		engine.setVariableOrder(variableOrder);
+		engine.setValueOrder(valueOrder);
+		engine.setPropagation(propagation);
+		if (engine.load(vals) && engine.solve()) {
+			engine.copyTo(vals);
+			for (Variable v : vars) {
+				v.value = vals[v.row][v.column];
+			}
+		}
+		nodes = engine.getNodes();
+		backtracks = engine.getBacktracks();
+		System.out.print("Candidates removed:");
+		for (SudokuEngine.Propagation stage : SudokuEngine.Propagation.values()) {
+			System.out.print(" " + stage + " " + engine.getRemovals(stage));
+		}
+		System.out.println();
+	}
+
+	/*
+	 * Solves on a pool of threads and copies the solution, if any, into vals
+	 * and the variables. With a countLimit above 0 it first counts the
+	 * solutions, up to countLimit, and prints the count.
+	 */
+	public static void solveParallel(ArrayList<Variable> vars, int[][] vals, int threads, long countLimit) {
+		ParallelSudoku parallel = new ParallelSudoku(threads, 3);
+		try {
+			if (countLimit > 0) {
+				long solutions = parallel.countSolutions(vals, countLimit);
+				System.out.println("Solutions: " + solutions + (solutions == countLimit ? " (limit reached)" : ""));
+			}
+			if (parallel.solve(vals)) {
+				for (Variable v : vars) {
+					v.value = vals[v.row][v.column];
 				}
-				writer.write('\n');
 			}
-			writer.close();
-		} else {
-			writer.write("-1");
-			writer.close();
+			nodes = parallel.getNodes();
+			backtracks = 0;
+		} finally {
+			parallel.shutdown();
 		}
 	}
 
+	/*
+	 * Solves as an exact cover problem with Dancing Links and copies the
+	 * solution, if any, into vals and the variables.
+	 */
+	public static void solveDancingLinks(ArrayList<Variable> vars, int[][] vals) {
+		DancingLinks links = new DancingLinks(boardSize);
+		if (links.load(vals) && links.solve()) {
+			links.copyTo(vals);
+			for (Variable v : vars) {
+				v.value = vals[v.row][v.column];
+			}
+		}
+		nodes = links.getNodes();
+		backtracks = links.getBacktracks();
+	}
+
+	/*
+	 * Solves vals with initiateDomains() and solve(), as main does with
+	 * -legacy, for callers that have no variables of their own. Leaves the
+	 * solution in vals and the counts in getNodes() and getBacktracks().
+	 */
+	public static boolean solveLegacy(int[][] vals) {
+		boardSize = vals.length;
+		partitionSize = (int) Math.sqrt(boardSize);
+		ArrayList<Variable> vars = new ArrayList<Variable>();
+		for (int i = 0; i < boardSize; i++) {
+			for (int j = 0; j < boardSize; j++) {
+				if (vals[i][j] == 0) {
+					vars.add(new Variable(i, j));
+				}
+			}
+		}
+		nodes = 0;
+		backtracks = 0;
+		initiateDomains(vars, vals);
+		solve(vars, vals);
+		return done(vars);
+	}
+
+	public static long getNodes() { return nodes; }
+	public static long getBacktracks() { return backtracks; }
+
 	public static void solve(ArrayList<Variable> vars, int[][] vals) {
 		int index = 0;
 		while (index < vars.size()) {
@@ -135,16 +263,24 @@ public class Sudoku {
 					break;
 				}
 			}
-			boolean outOfBound = forwardChecking(current, vars);
+			if (current.value <= boardSize) {
+				nodes++;
+			}
+			if (current.value <= boardSize && forwardChecking(current, vars)) {
+				// Some later variable has no value left: try the next one.
+				forwardUnChecking(current, vars);
+				continue;
+			}
 			vals[current.row][current.column] = current.value;
 			
-			if (outOfBound || current.value > boardSize) {
+			if (current.value > boardSize) {
 				if (index >= 1) {
 					current.value = 0;
 					Variable prev = vars.get(index - 1);
 					forwardUnChecking(prev, vars);
 					vals[prev.row][prev.column] = 0;
 					index--;
+					backtracks++;
 					continue;
 				} else {
 					return;
@@ -180,21 +316,33 @@ public class Sudoku {
 		return true;
 	}
 
+	/*
+	 * Removes the value of var from the domains of the variables that share a
+	 * row, column or box with it. Returns true if that leaves some empty
+	 * variable without a value to take; the removals are made either way,
+	 * so undo them with forwardUnChecking.
+	 */
 	public static boolean forwardChecking(Variable var, ArrayList<Variable> vars) {
+		boolean wipeout = false;
 		for (Variable v : vars) {
+			boolean changed;
 			if ((v.row / partitionSize == var.row / partitionSize
 					&& v.column / partitionSize == var.column / partitionSize))
-				v.domainBox.add(var.value);
+				changed = v.domainBox.add(var.value);
 			else if (v.row == var.row)
-				v.domainRow.add(var.value);
+				changed = v.domainRow.add(var.value);
 			else if (v.column == var.column)
-				v.domainCol.add(var.value);
-			if(v.domainRow.size() == boardSize || v.domainRow.size() == boardSize || v.domainRow.size() == boardSize) {
-				return true;
+				changed = v.domainCol.add(var.value);
+			else
+				changed = false;
+			if (changed && v != var && v.value == 0 && !wipeout) {
+				wipeout = true;
+				for (int value = 1; value <= boardSize && wipeout; value++) {
+					wipeout = v.domainRow.contains(value) || v.domainCol.contains(value) || v.domainBox.contains(value);
+				}
 			}
 		}
-		return false;
-		
+		return wipeout;
 	}
 
 	public static void forwardUnChecking(Variable var, ArrayList<Variable> vars) {
@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Solves a corpus of puzzles from one file, e.g. to grade 100k+ boards. The
+ * file may hold puzzles one per line or in the format Sudoku reads, in any
+ * mix; see PuzzleInput.
+ *
+ * The puzzles are streamed: a bounded number of them is read ahead of the
+ * one being written, so the corpus never has to fit in memory. They are
+ * solved on a fixed pool of threads, each keeping one SudokuEngine per board
+ * size for all the puzzles it solves, and the solutions are written in
+ * input order, one line per puzzle ("unsolvable" if there is none). At the
+ * end it prints the puzzles per second, the time spent parsing, solving
+ * and writing, and a histogram of the solve times.
+ *
+ * Run from the SudokuSolver directory, e.g.
+ * java -cp bin SudokuBatch puzzles.txt [-output file] [-threads n]
+ */
+public class SudokuBatch {
+	// Histogram bucket i counts solve times below 2^i microseconds.
+	private static final int BUCKETS = 32;
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final ThreadLocal<SudokuEngine[]> engines = new ThreadLocal<SudokuEngine[]>() {
+		@Override
+		protected SudokuEngine[] initialValue() {
+			return new SudokuEngine[65];
+		}
+	};
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private final AtomicLong maxNanos = new AtomicLong();
+	// Time spent solving, summed over the threads, and parsing and writing.
+	private final AtomicLong solveNanos = new AtomicLong();
+	private long parseNanos;
+	private long writeNanos;
+
+	private long puzzles;
+	private long solved;
+
+	public SudokuBatch(int threads) {
+		this.pool = Executors.newFixedThreadPool(threads);
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		File input = new File(args[0]);
+		File output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int a = 1; a + 1 < args.length; a += 2) {
+			switch (args[a]) {
+			case "-output": output = new File(args[a + 1]); break;
+			case "-threads": threads = Integer.parseInt(args[a + 1]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[a]);
+			}
+		}
+
+		SudokuBatch batch = new SudokuBatch(threads);
+		long start = System.nanoTime();
+		try (PuzzleInput in = new PuzzleInput(input);
+				PuzzleOutput out = output == null ? null : new PuzzleOutput(output)) {
+			batch.run(in, out);
+		} finally {
+			batch.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		batch.printReport(seconds);
+	}
+
+	/* Traditional Getters */
+	public long getPuzzles() { return puzzles; }
+	public long getSolved() { return solved; }
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/*
+	 * Solves every puzzle read from in and writes the solutions to out, if
+	 * not null, in input order.
+	 */
+	public void run(PuzzleInput in, PuzzleOutput out) throws IOException, InterruptedException, ExecutionException {
+		// Puzzles submitted and not written yet, oldest first; at most
+		// window of them, so reading stays just ahead of the solvers.
+		int window = threads * 64;
+		ArrayDeque<Future<int[]>> inFlight = new ArrayDeque<>(window);
+		while (true) {
+			long start = System.nanoTime();
+			int[] board = in.next();
+			parseNanos += System.nanoTime() - start;
+			if (board == null) {
+				break;
+			}
+			if (inFlight.size() == window) {
+				write(inFlight.poll().get(), out);
+			}
+			inFlight.add(pool.submit(() -> solve(board)));
+		}
+		while (!inFlight.isEmpty()) {
+			write(inFlight.poll().get(), out);
+		}
+	}
+
+	private void write(int[] board, PuzzleOutput out) throws IOException {
+		puzzles++;
+		if (board[0] != 0) {
+			solved++;
+		}
+		if (out != null) {
+			long start = System.nanoTime();
+			if (board[0] == 0) {
+				out.write("unsolvable\n");
+			} else {
+				out.writeLine(board);
+			}
+			writeNanos += System.nanoTime() - start;
+		}
+	}
+
+	/*
+	 * Solves the puzzle in place and records the time taken. An unsolvable
+	 * puzzle is left with board[0] == 0, which no solution has.
+	 */
+	private int[] solve(int[] board) {
+		long start = System.nanoTime();
+		int boardSize = (int) Math.sqrt(board.length);
+		SudokuEngine[] mine = engines.get();
+		if (mine[boardSize] == null) {
+			mine[boardSize] = new SudokuEngine(boardSize);
+		}
+		SudokuEngine engine = mine[boardSize];
+		if (engine.load(board) && engine.solve()) {
+			engine.copyTo(board);
+		} else {
+			board[0] = 0;
+		}
+		long nanos = System.nanoTime() - start;
+		solveNanos.addAndGet(nanos);
+		record(nanos);
+		return board;
+	}
+
+	private void record(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public void printReport(double seconds) {
+		System.out.printf(Locale.ROOT, "Puzzles: %d Solved: %d Unsolvable: %d%n", puzzles, solved, puzzles - solved);
+		System.out.printf(Locale.ROOT, "%d threads, %.2f s, %.0f puzzles/s%n", threads, seconds, puzzles / seconds);
+		System.out.printf(Locale.ROOT, "Parse: %.1f ms Solve: %.1f ms (all threads) Write: %.1f ms%n", parseNanos / 1e6,
+				solveNanos.get() / 1e6, writeNanos / 1e6);
+		System.out.println("Solve time histogram:");
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			cumulative += counts[i];
+			System.out.printf(Locale.ROOT, "  < %10d us %10d %6.2f%%%n", 1L << i, counts[i],
+					100.0 * cumulative / total);
+		}
+		System.out.printf(Locale.ROOT, "p50 < %d us, p90 < %d us, p99 < %d us, max %.1f us%n", percentile(counts, total, 0.5),
+				percentile(counts, total, 0.9), percentile(counts, total, 0.99), maxNanos.get() / 1e3);
+	}
+
+	/* Upper bound of the bucket holding the given fraction of the times. */
+	private static long percentile(long[] counts, long total, double fraction) {
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= fraction * total) {
+				return 1L << i;
+			}
+		}
+		return 1L << (counts.length - 1);
+	}
+}
@@ -0,0 +1,344 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs every solver strategy on every bundled puzzle (the sudokuN*.txt files
+ * in the working directory), in the manner of a JMH benchmark: each one is
+ * warmed up and then run back to back for a fixed amount of time. For every
+ * puzzle and strategy this prints
+ * - throughput (solves per second) and average latency of one solve,
+ * - allocation rate and bytes allocated per solve, over all threads,
+ * - the nodes and backtracks of one solve,
+ * - whether the result is right: a puzzle with a stored *Solution.txt and a
+ *   unique solution must give exactly that solution, an unsolvable one must
+ *   fail, and any other solution must be a valid completion of the givens.
+ * A solve is loading the puzzle into a solver and searching it; the solvers
+ * are built once per board size, as SudokuBatch uses them. The legacy
+ * strategy (Sudoku.solve()) only runs on 9x9 boards, as it does not finish
+ * the larger ones in reasonable time, and a solve that takes longer than
+ * -limit ms is reported as a timeout where the solver can be stopped. Exits
+ * with status 1 if any check fails, so performance and correctness
+ * regressions are caught by the same run.
+ *
+ * Run from the SudokuSolver directory, e.g.
+ * java -cp bin SudokuBenchmark [-time ms] [-limit ms] [-strategies a,b]
+ */
+public class SudokuBenchmark {
+	public static final String[] STRATEGIES = { "legacy", "fc", "ac3", "singles", "pairs", "dlx", "parallel" };
+
+	public static void main(String[] args) throws IOException {
+		long time = 1000;
+		long limit = 10000;
+		String[] strategies = STRATEGIES;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-time": time = Long.parseLong(args[i + 1]); break;
+			case "-strategies": strategies = args[i + 1].split(","); break;
+			case "-limit": limit = Long.parseLong(args[i + 1]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		int failures = 0;
+		System.out.printf("%-22s %-9s %10s %12s %10s %12s %10s %10s %6s%n", "puzzle", "strategy", "ops/s",
+				"avg us/op", "MB/s", "B/op", "nodes", "backtracks", "check");
+		for (File file : puzzleFiles(new File("."))) {
+			int[] board;
+			try (PuzzleInput input = new PuzzleInput(file)) {
+				board = input.next();
+			}
+			Expected expected = expected(file, board);
+			String name = file.getName().substring(0, file.getName().length() - 4);
+			Solvers solvers = new Solvers((int) Math.sqrt(board.length), limit);
+			try {
+				for (String strategy : strategies) {
+					if (strategy.equals("legacy") && board.length > 81) {
+						System.out.printf("%-22s %-9s %10s%n", name, strategy, "skipped");
+						continue;
+					}
+					measure(solvers, strategy, board, time / 2);
+					Result result = measure(solvers, strategy, board, time);
+					if (result.timedOut) {
+						System.out.printf("%-22s %-9s %10s%n", name, strategy, "timeout");
+						continue;
+					}
+					boolean ok = expected.check(result.solved ? result.solution : null);
+					if (!ok) {
+						failures++;
+					}
+					double seconds = result.nanos / 1e9;
+					System.out.printf(Locale.ROOT, "%-22s %-9s %10.1f %12.1f %10s %12s %10d %10d %6s%n", name,
+							strategy, result.ops / seconds, result.nanos / 1000.0 / result.ops,
+							result.bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", result.bytes / seconds / (1 << 20)),
+							result.bytes < 0 ? "n/a" : Long.toString(result.bytes / result.ops), solvers.nodes,
+							solvers.backtracks, ok ? "ok" : "FAIL");
+				}
+			} finally {
+				solvers.shutdown();
+			}
+		}
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/* Solves back to back for at least time ms (and at least once). */
+	private static Result measure(Solvers solvers, String strategy, int[] board, long time) {
+		int boardSize = (int) Math.sqrt(board.length);
+		int[][] vals = new int[boardSize][boardSize];
+		Result result = new Result();
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + time * 1000000L;
+		long now;
+		do {
+			for (int row = 0; row < boardSize; row++) {
+				System.arraycopy(board, row * boardSize, vals[row], 0, boardSize);
+			}
+			result.solved = solvers.solve(strategy, vals);
+			result.ops++;
+			now = System.nanoTime();
+			if (solvers.stop.get()) {
+				result.timedOut = true;
+				return result;
+			}
+		} while (now < end);
+		result.nanos = now - start;
+		long bytesAfter = allocatedBytes();
+		result.bytes = bytesBefore < 0 ? -1 : bytesAfter - bytesBefore;
+		result.solution = new int[board.length];
+		for (int row = 0; row < boardSize; row++) {
+			System.arraycopy(vals[row], 0, result.solution, row * boardSize, boardSize);
+		}
+		return result;
+	}
+
+	private static class Result {
+		boolean timedOut;
+		boolean solved;
+		int[] solution;
+		long ops;
+		long nanos;
+		long bytes;
+	}
+
+	/*
+	 * The solvers for one board size, reused for every solve. The nodes and
+	 * backtracks are those of the last solve. A watchdog thread sets stop once
+	 * a solve has run for limit ms, which makes the SudokuEngine strategies
+	 * give up; the others always run to the end.
+	 */
+	private static class Solvers {
+		final SudokuEngine engine;
+		final DancingLinks links;
+		final ParallelSudoku parallel;
+		final AtomicBoolean stop = new AtomicBoolean();
+		final Thread watchdog;
+		final long limit;
+		volatile long deadline;
+		volatile boolean solving;
+		long nodes;
+		long backtracks;
+
+		Solvers(int boardSize, long limit) {
+			engine = new SudokuEngine(boardSize);
+			engine.setStop(stop);
+			links = new DancingLinks(boardSize);
+			parallel = new ParallelSudoku(Runtime.getRuntime().availableProcessors(), 3);
+			watchdog = new Thread(() -> {
+				try {
+					while (true) {
+						if (solving && System.nanoTime() - deadline > 0) {
+							stop.set(true);
+						}
+						Thread.sleep(10);
+					}
+				} catch (InterruptedException e) {
+					// shut down
+				}
+			}, "SudokuBenchmark watchdog");
+			watchdog.setDaemon(true);
+			watchdog.start();
+			this.limit = limit;
+		}
+
+		boolean solve(String strategy, int[][] vals) {
+			stop.set(false);
+			deadline = System.nanoTime() + limit * 1000000L;
+			solving = true;
+			try {
+				return run(strategy, vals);
+			} finally {
+				solving = false;
+			}
+		}
+
+		private boolean run(String strategy, int[][] vals) {
+			boolean solved;
+			switch (strategy) {
+			case "legacy":
+				solved = Sudoku.solveLegacy(vals);
+				nodes = Sudoku.getNodes();
+				backtracks = Sudoku.getBacktracks();
+				return solved;
+			case "dlx":
+				solved = links.load(vals) && links.solve();
+				if (solved) {
+					links.copyTo(vals);
+				}
+				nodes = links.getNodes();
+				backtracks = links.getBacktracks();
+				return solved;
+			case "parallel":
+				solved = parallel.solve(vals);
+				nodes = parallel.getNodes();
+				backtracks = 0;
+				return solved;
+			case "fc": engine.setPropagation(SudokuEngine.Propagation.FORWARD_CHECKING); break;
+			case "ac3": engine.setPropagation(SudokuEngine.Propagation.ARC_CONSISTENCY); break;
+			case "singles": engine.setPropagation(SudokuEngine.Propagation.SINGLES); break;
+			case "pairs": engine.setPropagation(SudokuEngine.Propagation.PAIRS); break;
+			default: throw new IllegalArgumentException("Unknown strategy: " + strategy);
+			}
+			solved = engine.load(vals) && engine.solve();
+			if (solved) {
+				engine.copyTo(vals);
+			}
+			nodes = engine.getNodes();
+			backtracks = engine.getBacktracks();
+			return solved;
+		}
+
+		void shutdown() {
+			parallel.shutdown();
+			watchdog.interrupt();
+		}
+	}
+
+	/*
+	 * What a solve of a puzzle must give: no solution, exactly the stored
+	 * one, or any valid completion of the givens.
+	 */
+	private static class Expected {
+		int[] givens;
+		boolean solvable;
+		int[] solution; // null if any valid completion will do
+
+		boolean check(int[] result) {
+			if (result == null || !solvable) {
+				return result == null && !solvable;
+			}
+			if (solution != null) {
+				return Arrays.equals(result, solution);
+			}
+			return isSolution(givens, result);
+		}
+	}
+
+	/*
+	 * Works out what a puzzle must give from its stored solution file, if
+	 * any, and from counting its solutions (up to 2).
+	 */
+	private static Expected expected(File puzzle, int[] board) throws IOException {
+		Expected expected = new Expected();
+		expected.givens = board;
+		SudokuEngine engine = new SudokuEngine((int) Math.sqrt(board.length));
+		long solutions = engine.load(board) ? engine.countSolutions(2) : 0;
+		expected.solvable = solutions > 0;
+		String name = puzzle.getName();
+		File stored = new File(puzzle.getParentFile(), name.substring(0, name.length() - 4) + "Solution.txt");
+		if (stored.exists()) {
+			String text = new String(Files.readAllBytes(stored.toPath()), "US-ASCII").trim();
+			if (text.equals("-1") == expected.solvable) {
+				throw new IllegalStateException(stored + " disagrees with the solution count " + solutions);
+			}
+			if (solutions == 1) {
+				String[] tokens = text.split("\\s+");
+				expected.solution = new int[tokens.length];
+				for (int i = 0; i < tokens.length; i++) {
+					expected.solution[i] = Integer.parseInt(tokens[i]);
+				}
+				if (!isSolution(board, expected.solution)) {
+					throw new IllegalStateException(stored + " is not a solution of " + puzzle);
+				}
+			}
+		}
+		return expected;
+	}
+
+	/* Whether solution is a full, valid board that keeps the givens. */
+	static boolean isSolution(int[] givens, int[] solution) {
+		if (solution.length != givens.length) {
+			return false;
+		}
+		int boardSize = (int) Math.sqrt(givens.length);
+		int partitionSize = (int) Math.sqrt(boardSize);
+		for (int cell = 0; cell < givens.length; cell++) {
+			if (solution[cell] < 1 || solution[cell] > boardSize || givens[cell] != 0 && givens[cell] != solution[cell]) {
+				return false;
+			}
+		}
+		for (int unit = 0; unit < boardSize; unit++) {
+			long row = 0;
+			long column = 0;
+			long box = 0;
+			int boxRow = unit / partitionSize * partitionSize;
+			int boxColumn = unit % partitionSize * partitionSize;
+			for (int i = 0; i < boardSize; i++) {
+				row |= 1L << (solution[unit * boardSize + i] - 1);
+				column |= 1L << (solution[i * boardSize + unit] - 1);
+				box |= 1L << (solution[(boxRow + i / partitionSize) * boardSize + boxColumn + i % partitionSize] - 1);
+			}
+			long all = boardSize == 64 ? -1L : (1L << boardSize) - 1;
+			if (row != all || column != all || box != all) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Bytes allocated so far by all live threads, as reported by HotSpot (the
+	 * same counter the JMH gc profiler reads), or -1 if unavailable.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(bean.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/* Returns the puzzle files in dir, ordered by board size, then name. */
+	public static File[] puzzleFiles(File dir) {
+		File[] files = dir.listFiles(
+				(d, name) -> name.matches("sudoku\\d+\\w*\\.txt") && !name.endsWith("Solution.txt"));
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files, (a, b) -> boardSize(a) != boardSize(b) ? Integer.compare(boardSize(a), boardSize(b))
+				: a.getName().compareTo(b.getName()));
+		return files;
+	}
+
+	private static int boardSize(File file) {
+		String name = file.getName();
+		int end = 6;
+		while (Character.isDigit(name.charAt(end))) {
+			end++;
+		}
+		return Integer.parseInt(name.substring(6, end));
+	}
+}
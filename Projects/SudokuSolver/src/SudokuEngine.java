@@ -0,0 +1,668 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Sudoku solver core on bitmasks. Every cell keeps its remaining candidate
+ * values as one long (bit v - 1 set if v is still possible), which is the
+ * intersection of what its row, column and box still allow; boards up to
+ * 64x64 fit. The peers of every cell (the other cells of its row, column and
+ * box) are computed once per board size.
+ *
+ * Placing a value removes it from the candidates of all peers, and a peer
+ * left with none is a contradiction. Depending on the Propagation level,
+ * more is deduced to a fixpoint, before the search (while loading the
+ * givens) and after every value it tries: singles, hidden singles, pairs.
+ * Every change is recorded on a trail, so backtracking undoes exactly the
+ * changes made since a mark instead of recomputing domains.
+ *
+ * The search picks the next cell and the order of its values by the
+ * configured VariableOrder and ValueOrder.
+ *
+ * Cells are numbered row by row, cell = row * boardSize + column, and values
+ * run from 1 to boardSize; 0 marks an empty cell.
+ */
+public class SudokuEngine {
+	/* How the search picks the next cell to branch on. */
+	public enum VariableOrder {
+		/* The first empty cell, row by row, as Sudoku.solve() does. */
+		STATIC,
+		/* The empty cell with the fewest candidates (minimum remaining values). */
+		MRV,
+		/* MRV, ties going to the cell with the most empty peers (degree). */
+		MRV_DEGREE
+	}
+
+	/*
+	 * How much is deduced after every placement, each level including the
+	 * ones before it.
+	 */
+	public enum Propagation {
+		/* Remove the placed value from the peers' candidates. */
+		FORWARD_CHECKING,
+		/*
+		 * AC-3 on the not-equal constraints between peers: a cell left with
+		 * a single candidate (a naked single) is placed, and its value removed
+		 * from its peers in turn, until no arc can be revised.
+		 */
+		ARC_CONSISTENCY,
+		/* Also place values that fit only one cell of a unit (hidden singles). */
+		SINGLES,
+		/* Also apply naked and hidden pairs. */
+		PAIRS
+	}
+
+	/* In which order the values of a cell are tried. */
+	public enum ValueOrder {
+		ASCENDING,
+		/* Values that remove the fewest candidates from empty peers first. */
+		LEAST_CONSTRAINING
+	}
+
+	private final int boardSize;
+	private final int partitionSize;
+	private final int cells;
+	private final long allValues;
+	private final int[][] peers;
+	private final int[][] units; // rows, then columns, then boxes
+
+	private final int[] value;
+	private final long[] candidates;
+	private int assigned;
+
+	// Trail of changes: cell and its candidates before the change. A cell
+	// stored as -(cell + 1) records that the cell was assigned.
+	private int[] trailCell;
+	private long[] trailMask;
+	private int trailSize;
+
+	// Cells left with a single candidate, waiting to be placed.
+	private final int[] pending;
+	private int pendingCount;
+
+	private Propagation propagation = Propagation.SINGLES;
+	// Candidates removed by each propagation stage since load.
+	private final long[] removals = new long[Propagation.values().length];
+	private VariableOrder variableOrder = VariableOrder.MRV_DEGREE;
+	private ValueOrder valueOrder = ValueOrder.LEAST_CONSTRAINING;
+	// Values of the cell being branched on at each depth, in the order tried.
+	private final int[] valueStack;
+	private final long[] valueKeys;
+
+	private long nodes;
+	private long backtracks;
+	// Set by another thread to make the search give up, see setStop.
+	private AtomicBoolean stop;
+
+	public SudokuEngine(int boardSize) {
+		int partitionSize = (int) Math.sqrt(boardSize);
+		if (partitionSize * partitionSize != boardSize || boardSize > 64 || boardSize < 1) {
+			throw new IllegalArgumentException("Unsupported board size: " + boardSize);
+		}
+		this.boardSize = boardSize;
+		this.partitionSize = partitionSize;
+		this.cells = boardSize * boardSize;
+		this.allValues = boardSize == 64 ? -1L : (1L << boardSize) - 1;
+		this.peers = computePeers();
+		this.units = computeUnits();
+		this.value = new int[cells];
+		this.candidates = new long[cells];
+		this.trailCell = new int[cells * 4];
+		this.trailMask = new long[cells * 4];
+		this.pending = new int[cells];
+		this.valueStack = new int[cells * boardSize];
+		this.valueKeys = new long[boardSize];
+	}
+
+	/*
+	 * A copy of other's board, to search a subtree of it independently. The
+	 * precomputed peers and units are shared; the counters start at 0.
+	 */
+	public SudokuEngine(SudokuEngine other) {
+		this.boardSize = other.boardSize;
+		this.partitionSize = other.partitionSize;
+		this.cells = other.cells;
+		this.allValues = other.allValues;
+		this.peers = other.peers;
+		this.units = other.units;
+		this.value = other.value.clone();
+		this.candidates = other.candidates.clone();
+		this.assigned = other.assigned;
+		this.trailCell = new int[cells * 4];
+		this.trailMask = new long[cells * 4];
+		this.pending = new int[cells];
+		this.valueStack = new int[cells * boardSize];
+		this.valueKeys = new long[boardSize];
+		this.propagation = other.propagation;
+		this.variableOrder = other.variableOrder;
+		this.valueOrder = other.valueOrder;
+		this.stop = other.stop;
+	}
+
+	/* Traditional Getters */
+	public int getBoardSize() { return boardSize; }
+	public long getNodes() { return nodes; }
+	public long getBacktracks() { return backtracks; }
+	public int getValue(int row, int column) { return value[row * boardSize + column]; }
+	public boolean isSolved() { return assigned == cells; }
+	public VariableOrder getVariableOrder() { return variableOrder; }
+	public ValueOrder getValueOrder() { return valueOrder; }
+	public Propagation getPropagation() { return propagation; }
+	/* Candidates removed by a stage since the last load. */
+	public long getRemovals(Propagation stage) { return removals[stage.ordinal()]; }
+
+	/* Traditional Setters */
+	public void setVariableOrder(VariableOrder variableOrder) { this.variableOrder = variableOrder; }
+	public void setValueOrder(ValueOrder valueOrder) { this.valueOrder = valueOrder; }
+	/* Takes effect from the next load on. */
+	public void setPropagation(Propagation propagation) { this.propagation = propagation; }
+
+	/*
+	 * Lets the search be cancelled from outside: once stop is set, solve and
+	 * countSolutions return as soon as they next try a value, as if nothing
+	 * was found.
+	 */
+	public void setStop(AtomicBoolean stop) { this.stop = stop; }
+
+	private int[][] computePeers() {
+		int[][] peers = new int[cells][];
+		int count = 3 * (boardSize - 1) - 2 * (partitionSize - 1);
+		for (int cell = 0; cell < cells; cell++) {
+			int row = cell / boardSize;
+			int column = cell % boardSize;
+			int rowBox = row / partitionSize * partitionSize;
+			int columnBox = column / partitionSize * partitionSize;
+			int[] list = new int[count];
+			int n = 0;
+			for (int other = 0; other < cells; other++) {
+				int r = other / boardSize;
+				int c = other % boardSize;
+				boolean sameBox = r / partitionSize * partitionSize == rowBox
+						&& c / partitionSize * partitionSize == columnBox;
+				if (other != cell && (r == row || c == column || sameBox)) {
+					list[n++] = other;
+				}
+			}
+			peers[cell] = list;
+		}
+		return peers;
+	}
+
+	private int[][] computeUnits() {
+		int[][] units = new int[3 * boardSize][boardSize];
+		for (int cell = 0; cell < cells; cell++) {
+			int row = cell / boardSize;
+			int column = cell % boardSize;
+			int box = row / partitionSize * partitionSize + column / partitionSize;
+			int inBox = row % partitionSize * partitionSize + column % partitionSize;
+			units[row][column] = cell;
+			units[boardSize + column][row] = cell;
+			units[2 * boardSize + box][inBox] = cell;
+		}
+		return units;
+	}
+
+	/**
+	 * Sets up a new puzzle, vals[row][column] being 0 for empty cells, and
+	 * places the givens.
+	 *
+	 * @return false if the givens contradict each other
+	 */
+	public boolean load(int[][] vals) {
+		clear();
+		for (int row = 0; row < boardSize; row++) {
+			for (int column = 0; column < boardSize; column++) {
+				if (!give(row * boardSize + column, vals[row][column])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/* As load(int[][]), from a board of cells numbered row by row. */
+	public boolean load(int[] board) {
+		clear();
+		for (int cell = 0; cell < cells; cell++) {
+			if (!give(cell, board[cell])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Places a given; v may already follow from the givens before it. */
+	private boolean give(int cell, int v) {
+		return v == 0 || value[cell] == v || assign(cell, v);
+	}
+
+	private void clear() {
+		for (int cell = 0; cell < cells; cell++) {
+			value[cell] = 0;
+			candidates[cell] = allValues;
+		}
+		assigned = 0;
+		trailSize = 0;
+		nodes = 0;
+		backtracks = 0;
+		Arrays.fill(removals, 0);
+	}
+
+	/* Writes the current values into vals; empty cells are written as 0. */
+	public void copyTo(int[][] vals) {
+		for (int cell = 0; cell < cells; cell++) {
+			vals[cell / boardSize][cell % boardSize] = value[cell];
+		}
+	}
+
+	public void copyTo(int[] board) {
+		System.arraycopy(value, 0, board, 0, cells);
+	}
+
+	/**
+	 * Searches for a solution of the loaded puzzle, leaving it in the engine.
+	 * Each value tried counts as a node and each value taken back as a
+	 * backtrack.
+	 *
+	 * @return false if there is none
+	 */
+	public boolean solve() {
+		return search(0);
+	}
+
+	private boolean search(int depth) {
+		if (assigned == cells) {
+			return true;
+		}
+		int cell = selectCell();
+		int base = depth * boardSize;
+		int count = orderValues(cell, base);
+		for (int i = 0; i < count; i++) {
+			if (stop != null && stop.get()) {
+				return false;
+			}
+			nodes++;
+			int mark = trailSize;
+			if (assign(cell, valueStack[base + i]) && search(depth + 1)) {
+				return true;
+			}
+			undo(mark);
+			backtracks++;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the solutions of the loaded puzzle, stopping once limit are
+	 * found, and leaves the board as loaded. Each value tried counts as a
+	 * node and each one that leads to no solution as a backtrack.
+	 */
+	public long countSolutions(long limit) {
+		return count(0, limit);
+	}
+
+	private long count(int depth, long limit) {
+		if (assigned == cells) {
+			return 1;
+		}
+		int cell = selectCell();
+		int base = depth * boardSize;
+		int count = orderValues(cell, base);
+		long found = 0;
+		for (int i = 0; i < count && found < limit; i++) {
+			if (stop != null && stop.get()) {
+				break;
+			}
+			nodes++;
+			int mark = trailSize;
+			long below = assign(cell, valueStack[base + i]) ? count(depth + 1, limit - found) : 0;
+			undo(mark);
+			if (below == 0) {
+				backtracks++;
+			}
+			found += below;
+		}
+		return found;
+	}
+
+	/*
+	 * The cell the search would branch on next, or -1 if the board is full.
+	 * Its candidates, in the order the search would try them, are written
+	 * to values, which needs room for boardSize values; returns the cell.
+	 */
+	public int branch(int[] values) {
+		if (assigned == cells) {
+			return -1;
+		}
+		int cell = selectCell();
+		int count = orderValues(cell, 0);
+		System.arraycopy(valueStack, 0, values, 0, count);
+		if (count < boardSize) {
+			values[count] = 0;
+		}
+		return cell;
+	}
+
+	private int selectCell() {
+		if (variableOrder == VariableOrder.STATIC) {
+			for (int cell = 0; cell < cells; cell++) {
+				if (value[cell] == 0) {
+					return cell;
+				}
+			}
+			return -1;
+		}
+		// Fewest candidates first; on ties the first cell, or with
+		// MRV_DEGREE the one with the most empty peers.
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		int bestDegree = -1;
+		for (int cell = 0; cell < cells; cell++) {
+			if (value[cell] != 0) {
+				continue;
+			}
+			int count = Long.bitCount(candidates[cell]);
+			if (count > bestCount) {
+				continue;
+			}
+			if (variableOrder == VariableOrder.MRV) {
+				if (count < bestCount) {
+					best = cell;
+					bestCount = count;
+				}
+				continue;
+			}
+			int degree = degree(cell);
+			if (count < bestCount || degree > bestDegree) {
+				best = cell;
+				bestCount = count;
+				bestDegree = degree;
+			}
+		}
+		return best;
+	}
+
+	/* Number of empty peers of cell. */
+	private int degree(int cell) {
+		int degree = 0;
+		for (int peer : peers[cell]) {
+			if (value[peer] == 0) {
+				degree++;
+			}
+		}
+		return degree;
+	}
+
+	/*
+	 * Writes the candidates of cell, in the order to try them, to valueStack
+	 * from base on and returns how many there are.
+	 */
+	private int orderValues(int cell, int base) {
+		int count = 0;
+		for (long remaining = candidates[cell]; remaining != 0; remaining &= remaining - 1) {
+			valueStack[base + count++] = Long.numberOfTrailingZeros(remaining) + 1;
+		}
+		if (valueOrder == ValueOrder.LEAST_CONSTRAINING && count > 1) {
+			// Insertion sort on (peers that lose the value, value).
+			long[] keys = valueKeys;
+			for (int i = 0; i < count; i++) {
+				int v = valueStack[base + i];
+				long bit = 1L << (v - 1);
+				int ruled = 0;
+				for (int peer : peers[cell]) {
+					if (value[peer] == 0 && (candidates[peer] & bit) != 0) {
+						ruled++;
+					}
+				}
+				long key = ((long) ruled << 8) | v;
+				int j = i;
+				while (j > 0 && keys[j - 1] > key) {
+					keys[j] = keys[j - 1];
+					j--;
+				}
+				keys[j] = key;
+			}
+			for (int i = 0; i < count; i++) {
+				valueStack[base + i] = (int) (keys[i] & 0xFF);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Places v on cell and propagates the consequences to a fixpoint with the
+	 * stages the propagation level allows. On a contradiction the changes
+	 * made so far stay on the trail; undo them with undo(mark).
+	 *
+	 * @return false on a contradiction
+	 */
+	public boolean assign(int cell, int v) {
+		pendingCount = 0;
+		if (!place(cell, v, Propagation.FORWARD_CHECKING)) {
+			return false;
+		}
+		while (true) {
+			if (propagation.compareTo(Propagation.ARC_CONSISTENCY) >= 0) {
+				for (int head = 0; head < pendingCount; head++) {
+					int next = pending[head];
+					if (value[next] == 0 && !place(next, Long.numberOfTrailingZeros(candidates[next]) + 1,
+							Propagation.ARC_CONSISTENCY)) {
+						return false;
+					}
+				}
+			}
+			pendingCount = 0;
+			if (propagation.compareTo(Propagation.SINGLES) < 0) {
+				return true;
+			}
+			int placed = hiddenSingles();
+			if (placed < 0) {
+				return false;
+			}
+			if (placed > 0) {
+				continue;
+			}
+			if (propagation.compareTo(Propagation.PAIRS) < 0) {
+				return true;
+			}
+			int removed = pairs();
+			if (removed <= 0) {
+				return removed == 0;
+			}
+		}
+	}
+
+	/*
+	 * Places every value that has a single possible cell left in some row,
+	 * column or box. Returns the number of values placed, or -1 if some
+	 * value has no cell left in a unit or a placement fails.
+	 */
+	private int hiddenSingles() {
+		int placed = 0;
+		for (int[] unit : units) {
+			long once = 0;
+			long twice = 0;
+			long fixed = 0;
+			for (int cell : unit) {
+				long mask = candidates[cell];
+				twice |= once & mask;
+				once |= mask;
+				if (value[cell] != 0) {
+					fixed |= mask;
+				}
+			}
+			if (once != allValues) {
+				return -1;
+			}
+			long hidden = once & ~twice & ~fixed;
+			while (hidden != 0) {
+				long bit = hidden & -hidden;
+				hidden ^= bit;
+				// Earlier placements may have settled or removed it meanwhile.
+				for (int cell : unit) {
+					if ((candidates[cell] & bit) != 0) {
+						if (value[cell] == 0) {
+							if (!place(cell, Long.numberOfTrailingZeros(bit) + 1, Propagation.SINGLES)) {
+								return -1;
+							}
+							placed++;
+						}
+						break;
+					}
+				}
+			}
+		}
+		return placed;
+	}
+
+	/*
+	 * Naked pairs: two empty cells of a unit with the same two candidates
+	 * take both values, so no other cell of the unit can have them. Hidden
+	 * pairs: two values that only fit the same two cells of a unit leave
+	 * those cells no other candidates. Returns the number of candidates
+	 * removed, or -1 if a cell runs out of candidates.
+	 */
+	private int pairs() {
+		int removed = 0;
+		for (int[] unit : units) {
+			for (int i = 0; i < boardSize; i++) {
+				long mask = candidates[unit[i]];
+				if (value[unit[i]] != 0 || Long.bitCount(mask) != 2) {
+					continue;
+				}
+				for (int j = i + 1; j < boardSize; j++) {
+					if (candidates[unit[j]] == mask && value[unit[j]] == 0) {
+						for (int k = 0; k < boardSize; k++) {
+							if (k != i && k != j && (candidates[unit[k]] & mask) != 0) {
+								int count = eliminate(unit[k], mask);
+								if (count < 0) {
+									return -1;
+								}
+								removed += count;
+							}
+						}
+						break;
+					}
+				}
+			}
+
+			// Cells of the unit (by position) that each empty value fits.
+			long[] places = valueKeys;
+			Arrays.fill(places, 0);
+			for (int i = 0; i < boardSize; i++) {
+				if (value[unit[i]] == 0) {
+					for (long m = candidates[unit[i]]; m != 0; m &= m - 1) {
+						places[Long.numberOfTrailingZeros(m)] |= 1L << i;
+					}
+				}
+			}
+			for (int a = 0; a < boardSize; a++) {
+				if (Long.bitCount(places[a]) != 2) {
+					continue;
+				}
+				for (int b = a + 1; b < boardSize; b++) {
+					if (places[b] == places[a]) {
+						long keep = (1L << a) | (1L << b);
+						for (long cells = places[a]; cells != 0; cells &= cells - 1) {
+							int cell = unit[Long.numberOfTrailingZeros(cells)];
+							if ((candidates[cell] & ~keep) != 0) {
+								int count = eliminate(cell, candidates[cell] & ~keep);
+								if (count < 0) {
+									return -1;
+								}
+								removed += count;
+							}
+						}
+						break;
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	/*
+	 * Removes the values in bits from the candidates of cell, queueing it if
+	 * a single one is left. Returns the number removed, or -1 if none is left.
+	 */
+	private int eliminate(int cell, long bits) {
+		long mask = candidates[cell];
+		int count = Long.bitCount(mask & bits);
+		record(cell, mask);
+		mask &= ~bits;
+		candidates[cell] = mask;
+		removals[Propagation.PAIRS.ordinal()] += count;
+		if (mask == 0) {
+			return -1;
+		}
+		if ((mask & (mask - 1)) == 0) {
+			pending[pendingCount++] = cell;
+		}
+		return count;
+	}
+
+	/*
+	 * Sets cell to v and removes v from its peers, queueing the peers that
+	 * are left with a single candidate; the candidates removed are counted
+	 * for stage. Returns false if v is not a candidate of cell or some peer
+	 * runs out of candidates. Candidates only shrink, so a cell is queued at
+	 * most once per round of propagation.
+	 */
+	private boolean place(int cell, int v, Propagation stage) {
+		long bit = 1L << (v - 1);
+		if ((candidates[cell] & bit) == 0) {
+			return false;
+		}
+		int removed = Long.bitCount(candidates[cell]) - 1;
+		record(-(cell + 1), candidates[cell]);
+		candidates[cell] = bit;
+		value[cell] = v;
+		assigned++;
+		for (int peer : peers[cell]) {
+			long mask = candidates[peer];
+			if ((mask & bit) != 0) {
+				record(peer, mask);
+				mask &= ~bit;
+				candidates[peer] = mask;
+				removed++;
+				if (mask == 0) {
+					removals[stage.ordinal()] += removed;
+					return false;
+				}
+				if ((mask & (mask - 1)) == 0) {
+					pending[pendingCount++] = peer;
+				}
+			}
+		}
+		removals[stage.ordinal()] += removed;
+		return true;
+	}
+
+	private void record(int cell, long mask) {
+		if (trailSize == trailCell.length) {
+			trailCell = Arrays.copyOf(trailCell, trailSize * 2);
+			trailMask = Arrays.copyOf(trailMask, trailSize * 2);
+		}
+		trailCell[trailSize] = cell;
+		trailMask[trailSize] = mask;
+		trailSize++;
+	}
+
+	/* Position on the trail, to undo back to later. */
+	public int mark() {
+		return trailSize;
+	}
+
+	/* Takes back every change made since mark. */
+	public void undo(int mark) {
+		while (trailSize > mark) {
+			trailSize--;
+			int cell = trailCell[trailSize];
+			if (cell < 0) {
+				cell = -cell - 1;
+				value[cell] = 0;
+				assigned--;
+			}
+			candidates[cell] = trailMask[trailSize];
+		}
+	}
+}